@@ -0,0 +1,135 @@
+package ridesharing.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ridesharing.algorithm.Solver;
+import ridesharing.algorithm.TripRequestGenerator;
+import ridesharing.model.AllPairsShortestPathMatrix;
+import ridesharing.model.Point;
+import ridesharing.model.Route;
+import ridesharing.model.TripRequest;
+import ridesharing.model.Vehicle;
+
+/**
+ * Shared benchmark input: a generated trip set, its matrix and an initial solution
+ * @author aengusmccullough
+ */
+@State(Scope.Benchmark)
+public class Instance {
+
+    static final long SEED = 42;
+    static final int BETA = 5;
+    static final int GAMMA = 25;
+    static final int CAPACITY = 3;
+    static final double ALPHA = 0.99;
+
+    @Param({"100", "1000", "10000"})
+    int nTrips;
+
+    List<TripRequest> requests;
+    AllPairsShortestPathMatrix matrix;
+    List<Vehicle> solution;
+    Route longestRoute;
+    TripRequest candidate;      //trip from another vehicle that can be inserted into longestRoute
+    int candidateSrc;
+    int candidateDest;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        requests = generate(nTrips);
+        matrix = new AllPairsShortestPathMatrix(requests);
+        for (TripRequest tr : requests) {
+            tr.updateTimeWindows(matrix);
+        }
+        solution = newSolver(1, 1).construct(new Random(SEED));
+        for (Vehicle v : solution) {
+            if (longestRoute == null || v.getRoute().getSchedule().size() > longestRoute.getSchedule().size()) {
+                longestRoute = v.getRoute();
+            }
+        }
+        findCandidate();
+    }
+
+    /**
+     * Picks the first trip (and insertion point) that fits into the longest route, so that
+     * insertion benchmarks measure a successful insertion where one exists.  If no trip
+     * fits, a trip whose insertion is rejected is used instead
+     */
+    private void findCandidate() {
+        int n = longestRoute.getSchedule().size();
+        for (Vehicle v : solution) {
+            if (v.getRoute() == longestRoute) {
+                continue;
+            }
+            for (TripRequest tr : v.getServicing().values()) {
+                for (int a = 0; a < n; a++) {
+                    for (int b = a; b < n; b++) {
+                        if (longestRoute.canInsert(a, b, tr, matrix, CAPACITY)) {
+                            candidate = tr;
+                            candidateSrc = a;
+                            candidateDest = b;
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+        candidate = requests.get(requests.size() / 2);
+        candidateSrc = n / 2;
+        candidateDest = n / 2;
+    }
+
+    /**
+     * Generated trip set.  The city grows with the number of trips so density stays the same
+     * @param nTrips int
+     * @return List<TripRequest>
+     */
+    static List<TripRequest> generate(int nTrips) {
+        TripRequestGenerator generator = new TripRequestGenerator();
+        generator.setTrips(nTrips);
+        generator.setExtent((int) (800 * Math.sqrt(nTrips / 100.0)));
+        generator.setHotspots(Math.max(2, nTrips / 100), 40, 50);
+        generator.setCommuterShare(30);
+        generator.setSeed(SEED);
+        return generator.generate();
+    }
+
+    /**
+     * @return Route a copy of the longest route with its own points, for benchmarks that modify it
+     */
+    Route copyOfLongestRoute() {
+        Route route = new Route(CAPACITY);
+        List<Point> points = new ArrayList<>();
+        for (Point p : longestRoute.getSchedule()) {
+            points.add(new Point(p));
+        }
+        route.setSchedule(points);
+        return route;
+    }
+
+    BenchmarkSolver newSolver(int nIterations, int nSearchIterations) {
+        BenchmarkSolver solver = new BenchmarkSolver(requests, matrix, nIterations, nSearchIterations);
+        solver.setSeed(SEED);
+        return solver;
+    }
+
+    /**
+     * Exposes the construction phase, which is protected in Solver
+     */
+    static class BenchmarkSolver extends Solver {
+
+        BenchmarkSolver(List<TripRequest> requests, AllPairsShortestPathMatrix matrix, int nIterations, int nSearchIterations) {
+            super(requests, matrix, BETA, GAMMA, CAPACITY, nIterations, nSearchIterations);
+        }
+
+        List<Vehicle> construct(Random rnd) {
+            return calcInitialSolution(rnd);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package ridesharing.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ridesharing.model.AllPairsShortestPathMatrix;
+import ridesharing.model.TripRequest;
+
+/**
+ * Cost of building the all pairs travel time matrix
+ * @author aengusmccullough
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class MatrixBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    int nTrips;
+
+    List<TripRequest> requests;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        requests = Instance.generate(nTrips);
+    }
+
+    @Benchmark
+    public AllPairsShortestPathMatrix construct() {
+        return new AllPairsShortestPathMatrix(requests);
+    }
+}
@@ -0,0 +1,106 @@
+package ridesharing.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ridesharing.model.Point;
+import ridesharing.model.Route;
+import ridesharing.model.TripRequest;
+
+/**
+ * Route hot paths, measured on the longest route of an initial solution
+ * @author aengusmccullough
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class RouteBenchmark {
+
+    Route route;
+    Route cached;
+    TripRequest candidate;
+    int srcIdx;
+    int destIdx;
+    int removeSrc;      //first trip of the route, as Route.remove takes it
+    int removeDest;
+
+    /**
+     * None of the benchmarks using this state modify the route, so it is built once
+     */
+    @Setup(Level.Trial)
+    public void setup(Instance instance) {
+        route = instance.copyOfLongestRoute();
+        //a copy with its cached arrays already built, as the search sees it
+        cached = new Route(route);
+        cached.evaluateObjective(instance.matrix, Instance.ALPHA);
+        candidate = instance.candidate;
+        srcIdx = instance.candidateSrc;
+        destIdx = instance.candidateDest;
+        List<Point> schedule = route.getSchedule();
+        removeSrc = 0;
+        removeDest = 1;
+        while (schedule.get(removeDest).getTripId() != schedule.get(removeSrc).getTripId()) {
+            removeDest++;
+        }
+        removeDest--;
+    }
+
+    /**
+     * A fresh route for every call of insert, which modifies it.  Per invocation setup
+     * costs JMH a timer call either side of each call, so insert's result is less exact
+     * than the others'
+     */
+    @State(Scope.Thread)
+    public static class Fresh {
+
+        Route route;
+
+        @Setup(Level.Invocation)
+        public void setup(Instance instance) {
+            route = instance.copyOfLongestRoute();
+        }
+    }
+
+    @Benchmark
+    public boolean canTraverse(Instance instance) {
+        return Route.canTraverse(route.getSchedule(), instance.matrix, Instance.CAPACITY);
+    }
+
+    @Benchmark
+    public boolean insert(Fresh fresh) {
+        return fresh.route.insert(srcIdx, destIdx, candidate);
+    }
+
+    @Benchmark
+    public double calculateObjective(Instance instance) {
+        return route.calculateObjective(instance.matrix, Instance.ALPHA);
+    }
+
+    @Benchmark
+    public double insertionDelta(Instance instance) {
+        return cached.insertionDelta(srcIdx, destIdx, candidate, instance.matrix, Instance.ALPHA);
+    }
+
+    @Benchmark
+    public Route copy() {
+        return new Route(route);
+    }
+
+    @Benchmark
+    public Route without() {
+        return route.without(removeSrc, removeDest);
+    }
+}
@@ -0,0 +1,99 @@
+package ridesharing.benchmark;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ridesharing.algorithm.Solver;
+import ridesharing.model.Route;
+import ridesharing.model.TripRequest;
+import ridesharing.model.Vehicle;
+
+/**
+ * Solver insertion heuristics, construction and a full solve
+ * @author aengusmccullough
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class SolverBenchmark {
+
+    Route route;
+    TripRequest candidate;
+    Random rnd;
+
+    /**
+     * attemptSearchInsertion returns a copy rather than modifying the route, so it is built once
+     */
+    @Setup(Level.Trial)
+    public void setup(Instance instance) {
+        route = instance.copyOfLongestRoute();
+        route.calculateObjective(instance.matrix, Instance.ALPHA);
+        candidate = instance.candidate;
+    }
+
+    @Setup(Level.Iteration)
+    public void seed() {
+        rnd = new Random(Instance.SEED);
+    }
+
+    /**
+     * A fresh route and random sequence for every call of attemptInitialInsertion, which
+     * inserts into the route.  Per invocation setup costs JMH a timer call either side of
+     * each call, so its result is less exact than the others'
+     */
+    @State(Scope.Thread)
+    public static class Fresh {
+
+        Route route;
+        Random rnd;
+
+        @Setup(Level.Invocation)
+        public void setup(Instance instance) {
+            route = instance.copyOfLongestRoute();
+            route.calculateObjective(instance.matrix, Instance.ALPHA);
+            rnd = new Random(Instance.SEED);
+        }
+    }
+
+    @Benchmark
+    public boolean attemptInitialInsertion(Instance instance, Fresh fresh) {
+        return Solver.attemptInitialInsertion(instance.matrix, fresh.route, candidate, Instance.ALPHA, Instance.BETA, Instance.CAPACITY, fresh.rnd);
+    }
+
+    @Benchmark
+    public Route attemptSearchInsertion(Instance instance) {
+        return Solver.attemptSearchInsertion(instance.matrix, route, candidate, Instance.ALPHA, Instance.CAPACITY);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 3)
+    public List<Vehicle> calcInitialSolution(Instance instance) {
+        return instance.newSolver(1, 1).construct(rnd);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public List<Vehicle> solve(Instance instance) {
+        return instance.newSolver(4, 10).solve();
+    }
+}
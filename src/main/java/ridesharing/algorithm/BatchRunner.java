@@ -0,0 +1,230 @@
+package ridesharing.algorithm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import ridesharing.model.TripRequest;
+import ridesharing.model.Vehicle;
+
+/**
+ * Solves many independent scenarios in one JVM, so they share its start up and JIT
+ * warm up.  Scenarios are every .txt input file in a directory, or the lines of a
+ * manifest, each an input file followed by its own options (as Main), e.g.
+ * <pre>depot1.txt --capacity 4 --seed 1</pre>
+ * Options given to the runner apply to every scenario unless a manifest line overrides
+ * them.  Scenarios are solved on a fixed pool of workers, largest input first so a long
+ * solve is not left to start last, and each one's itineraries are written to the
+ * output directory.  The solver workers of scenarios with --threads all run on one
+ * shared pool, as large as the most threads any scenario asks for, rather than a pool
+ * per scenario
+ * @author aengusmccullough
+ */
+public class BatchRunner {
+
+    private final List<Scenario> scenarios = new ArrayList<>();
+    private int nThreads = 1;
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        Map<String, String> clArgs = Main.parseCommandLineArgs(args);
+        if (!clArgs.containsKey("input") || !clArgs.containsKey("outdir")) {
+            Main.exitWithException("Usage: <input_directory|manifest_file> --outdir <output_directory> "
+                    + "[--threads <no of scenarios solved at once>] [options of Main applied to every scenario]");
+        }
+        File input = new File(clArgs.remove("input"));
+        File outdir = new File(clArgs.remove("outdir"));
+        BatchRunner runner = new BatchRunner();
+        if (clArgs.containsKey("threads")) {
+            runner.setThreads(Integer.parseInt(clArgs.remove("threads")));
+        }
+        try {
+            if (input.isDirectory()) {
+                runner.addDirectory(input, outdir, clArgs);
+            } else {
+                runner.addManifest(input, outdir, clArgs);
+            }
+        } catch (IOException ex) {
+            Main.exitWithException("Error reading " + input + ": " + ex.getMessage());
+        }
+        if (!outdir.isDirectory() && !outdir.mkdirs()) {
+            Main.exitWithException("Cannot create output directory: " + outdir);
+        }
+        int failed = runner.run();
+        if (failed > 0) {
+            System.err.println(failed + " scenarios failed");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param nThreads int number of scenarios solved at once
+     */
+    public void setThreads(int nThreads) {
+        this.nThreads = nThreads;
+    }
+
+    /**
+     * Add a scenario for every .txt file in a directory
+     * @param dir File
+     * @param outdir File output directory
+     * @param options Map<String,String> options for every scenario
+     * @throws IOException
+     */
+    public void addDirectory(File dir, File outdir, Map<String, String> options) throws IOException {
+        File[] files = dir.listFiles((File f) -> f.isFile() && f.getName().endsWith(".txt"));
+        if (files == null) {
+            throw new IOException("Cannot list directory");
+        }
+        Arrays.sort(files);
+        for (File f : files) {
+            Map<String, String> scenario = new HashMap<>(options);
+            scenario.put("input", f.getPath());
+            add(scenario, new File(outdir, baseName(f) + ".out"));
+        }
+    }
+
+    /**
+     * Add a scenario for every line of a manifest: an input file (relative to the
+     * manifest) followed by options.  Blank lines and lines starting with # are skipped
+     * @param manifest File
+     * @param outdir File output directory
+     * @param options Map<String,String> options for every scenario, overridden by those on a line
+     * @throws IOException
+     */
+    public void addManifest(File manifest, File outdir, Map<String, String> options) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(manifest))) {
+            String line;
+            int lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                Map<String, String> scenario = new HashMap<>(options);
+                scenario.putAll(Main.parseCommandLineArgs(line.split("\\s+")));
+                File f = new File(scenario.get("input"));
+                if (!f.isAbsolute()) {
+                    f = new File(manifest.getAbsoluteFile().getParentFile(), scenario.get("input"));
+                }
+                scenario.put("input", f.getPath());
+                add(scenario, new File(outdir, baseName(f) + "." + lineNo + ".out"));
+            }
+        }
+    }
+
+    /**
+     * Add a scenario
+     * @param options Map<String,String> options as Main, including the input file
+     * (checked as Main does, exiting if they are invalid)
+     * @param output File itineraries are written to
+     */
+    public void add(Map<String, String> options, File output) {
+        Main.validateArgs(options);
+        scenarios.add(new Scenario(options, output));
+    }
+
+    /**
+     * Solve the scenarios, largest input first, reporting each as it completes
+     * @return int number of scenarios that failed
+     */
+    public int run() {
+        List<Scenario> bySize = new ArrayList<>(scenarios);
+        bySize.sort((Scenario a, Scenario b) -> Long.compare(b.size(), a.size()));
+        long start = System.nanoTime();
+        int failed = 0;
+        int solverThreads = 1;
+        for (Scenario scenario : bySize) {
+            solverThreads = Math.max(solverThreads, scenario.threads());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, nThreads));
+        ExecutorService solverPool = Executors.newFixedThreadPool(solverThreads);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (Scenario scenario : bySize) {
+                results.add(executor.submit(() -> scenario.solve(solverPool)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    System.out.println(results.get(i).get());
+                } catch (ExecutionException ex) {
+                    failed++;
+                    System.err.println(bySize.get(i).options.get("input") + ": failed: " + ex.getCause());
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while solving", ex);
+        } finally {
+            executor.shutdownNow();
+            solverPool.shutdownNow();
+        }
+        System.out.println("Solved " + (bySize.size() - failed) + " of " + bySize.size() + " scenarios in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+        return failed;
+    }
+
+    private static String baseName(File f) {
+        String name = f.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * A single input file and set of options
+     */
+    private static class Scenario {
+
+        private final Map<String, String> options;
+        private final File output;
+
+        Scenario(Map<String, String> options, File output) {
+            this.options = options;
+            this.output = output;
+        }
+
+        /**
+         * @return long size of the input file, as a measure of how long it takes to solve
+         */
+        long size() {
+            return new File(options.get("input")).length();
+        }
+
+        /**
+         * @return int number of solver workers the scenario asks for
+         */
+        int threads() {
+            return options.containsKey("threads") ? Integer.parseInt(options.get("threads")) : 1;
+        }
+
+        /**
+         * @param solverPool ExecutorService shared pool the solver workers run on
+         * @return String summary of the result
+         * @throws IOException
+         */
+        String solve(ExecutorService solverPool) throws IOException {
+            long start = System.nanoTime();
+            List<TripRequest> tripRequests = InputParser.parseInputFile(new File(options.get("input")), threads());
+            List<Vehicle> result = Main.solve(tripRequests, options, null, solverPool);
+            Main.writeItineraries(result, output);
+            double objective = 0;
+            for (Vehicle v : result) {
+                objective += v.getRoute().getObjective();
+            }
+            return options.get("input") + " -> " + output + ": " + tripRequests.size() + " trips, " + result.size()
+                    + " vehicles, objective " + objective + ", " + (System.nanoTime() - start) / 1000000 + " ms";
+        }
+    }
+}
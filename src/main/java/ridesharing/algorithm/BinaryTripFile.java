@@ -0,0 +1,196 @@
+package ridesharing.algorithm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import ridesharing.model.TripRequest;
+
+/**
+ * Trip requests in a compact binary file, so a dataset that is solved again and again
+ * is parsed from text only once.  File layout: header (magic, version, record count,
+ * string count), then a fixed width record per trip request (trip id, index of the
+ * requester in the string table, depart after and arrive before as minutes of day,
+ * x1, y1, x2, y2), then the string table (length and UTF-8 bytes of each distinct
+ * requester).  The file is memory mapped to load it.  InputParser recognises the file
+ * by its magic number, so it can be given anywhere an input file is expected
+ * @author aengusmccullough
+ */
+public class BinaryTripFile {
+
+    private static final int MAGIC = 0x52545242;      //"RTRB"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 4;
+    private static final int RECORD_BYTES = 8 * 4;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private BinaryTripFile() {
+    }
+
+    /**
+     * Convert an input file to a binary trip file
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        Map<String, String> clArgs = Main.parseCommandLineArgs(args);
+        if (!clArgs.containsKey("input")) {
+            Main.exitWithException("Usage: <path_to_input_file> [--output <path_to_binary_file>] (default <input>.rtb)");
+        }
+        String output = clArgs.containsKey("output") ? clArgs.get("output") : clArgs.get("input") + ".rtb";
+        List<TripRequest> tripRequests = null;
+        try {
+            tripRequests = InputParser.parseInputFile(new File(clArgs.get("input")));
+        } catch (IOException ex) {
+            Main.exitWithException("Error parsing input file: " + ex.getMessage());
+        }
+        try {
+            write(new File(output), tripRequests);
+        } catch (IOException ex) {
+            Main.exitWithException("An error occurred attempting to write output file to: " + output);
+        }
+        System.out.println("Wrote " + tripRequests.size() + " trip requests to " + output);
+    }
+
+    /**
+     * Write trip requests as a binary trip file.  Only the depart after and arrive before
+     * times are written, as read by InputParser.  The file is written under a temporary
+     * name and renamed, so a file being loaded is never seen part written
+     * @param f File output file
+     * @param tripRequests List<TripRequest>
+     * @throws IOException
+     */
+    public static void write(File f, List<TripRequest> tripRequests) throws IOException {
+        File tmp = File.createTempFile("rtb-" + f.getName(), ".tmp", f.getAbsoluteFile().getParentFile());
+        try {
+            writeRecords(tmp, tripRequests);
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    private static void writeRecords(File f, List<TripRequest> tripRequests) throws IOException {
+        Map<String, Integer> index = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (TripRequest tr : tripRequests) {
+            if (!index.containsKey(tr.getRequester())) {
+                index.put(tr.getRequester(), strings.size());
+                strings.add(tr.getRequester());
+            }
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw"); FileChannel channel = raf.getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(tripRequests.size()).putInt(strings.size());
+            for (TripRequest tr : tripRequests) {
+                if (buffer.remaining() < RECORD_BYTES) {
+                    flush(buffer, channel);
+                }
+                buffer.putInt(tr.getTripId()).putInt(index.get(tr.getRequester()))
+                        .putInt(tr.getSource().getEarliest()).putInt(tr.getDestination().getLatest())
+                        .putInt(tr.getSource().getxCoord()).putInt(tr.getSource().getyCoord())
+                        .putInt(tr.getDestination().getxCoord()).putInt(tr.getDestination().getyCoord());
+            }
+            for (String s : strings) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                if (buffer.remaining() < 4 + bytes.length) {
+                    flush(buffer, channel);
+                }
+                if (buffer.remaining() < 4 + bytes.length) {
+                    buffer = ByteBuffer.allocate(4 + bytes.length);
+                }
+                buffer.putInt(bytes.length).put(bytes);
+            }
+            flush(buffer, channel);
+        }
+    }
+
+    private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @param f File
+     * @return boolean whether the file is a binary trip file
+     * @throws IOException
+     */
+    public static boolean isBinary(File f) throws IOException {
+        if (!f.isFile() || f.length() < HEADER_BYTES) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+            return raf.readInt() == MAGIC;
+        }
+    }
+
+    /**
+     * Load the trip requests of a binary trip file
+     * @param f File
+     * @return List<TripRequest> trip requests, in the order they were written
+     * @throws IOException if the file cannot be read or is not a binary trip file
+     */
+    public static List<TripRequest> load(File f) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r"); FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Trip file too large to map: " + f);
+            }
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < HEADER_BYTES || buf.getInt(0) != MAGIC) {
+                throw new IOException("Not a binary trip file: " + f);
+            }
+            if (buf.getInt(4) != VERSION) {
+                throw new IOException("Unsupported binary trip file version " + buf.getInt(4) + ": " + f);
+            }
+            int nRecords = buf.getInt(8);
+            int nStrings = buf.getInt(12);
+            if (nRecords < 0 || nStrings < 0 || HEADER_BYTES + (long) nRecords * RECORD_BYTES > size) {
+                throw new IOException("Corrupt binary trip file: " + f);
+            }
+            int pos = HEADER_BYTES + nRecords * RECORD_BYTES;
+            //every string takes at least its 4 byte length, so a bad count is caught before the table is allocated
+            if (nStrings * 4L > size - pos) {
+                throw new IOException("Corrupt binary trip file: " + f);
+            }
+
+            //string table, after the records
+            String[] strings = new String[nStrings];
+            byte[] bytes = new byte[64];
+            for (int i = 0; i < nStrings; i++) {
+                int length = pos + 4 <= size ? buf.getInt(pos) : -1;
+                if (length < 0 || pos + 4 + (long) length > size) {
+                    throw new IOException("Corrupt binary trip file: " + f);
+                }
+                if (bytes.length < length) {
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                }
+                buf.position(pos + 4);
+                buf.get(bytes, 0, length);
+                strings[i] = new String(bytes, 0, length, StandardCharsets.UTF_8);
+                pos += 4 + length;
+            }
+
+            List<TripRequest> tripRequests = new ArrayList<>(nRecords);
+            for (int i = 0, rec = HEADER_BYTES; i < nRecords; i++, rec += RECORD_BYTES) {
+                int requester = buf.getInt(rec + 4);
+                if (requester < 0 || requester >= nStrings) {
+                    throw new IOException("Corrupt binary trip file: " + f);
+                }
+                tripRequests.add(InputParser.newTripRequest(strings[requester], buf.getInt(rec), buf.getInt(rec + 8), buf.getInt(rec + 12),
+                        buf.getInt(rec + 16), buf.getInt(rec + 20), buf.getInt(rec + 24), buf.getInt(rec + 28)));
+            }
+            return tripRequests;
+        }
+    }
+}
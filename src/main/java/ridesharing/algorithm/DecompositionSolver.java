@@ -0,0 +1,282 @@
+package ridesharing.algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import ridesharing.model.AllPairsShortestPathMatrix;
+import ridesharing.model.Point;
+import ridesharing.model.Route;
+import ridesharing.model.TravelTimeProvider;
+import ridesharing.model.TripRequest;
+import ridesharing.model.Vehicle;
+
+/**
+ * Solves a large instance by splitting it geographically.  Trip requests are clustered
+ * by source and destination with k-means, and each cluster is solved by a Solver with
+ * a matrix of its own, on <code>nThreads</code> workers.  A repair pass then works
+ * across cluster boundaries.  Each cluster's routes were chained within the cluster,
+ * so they are split again wherever the vehicle is empty; each trip left riding alone
+ * is re-inserted into the route of any cluster where it gains at least as much
+ * objective; and the pieces of all clusters are chained together, so a vehicle can
+ * go on to serve trips of another cluster.  Memory for the matrices falls with the
+ * square of the number of clusters
+ * @author aengusmccullough
+ */
+public class DecompositionSolver {
+
+    private final List<TripRequest> requests;
+    private final TravelTimeProvider matrix;
+    private final int beta;
+    private final int gamma;
+    private final int capacity;
+    private final int nIterations;
+    private final int nSearchIterations;
+    private int nClusters = 4;
+    private int nThreads = 1;
+    private ExecutorService executor;
+    private long seed = System.nanoTime();
+    private boolean neighborhoodSearch;
+
+    /**
+     * Constructor, as Solver
+     *
+     * @param requests List<TripRequest> (with time windows updated)
+     * @param matrix TravelTimeProvider used across clusters (e.g. LazyTravelTimeProvider
+     * without a cache, as it is given nodes of every cluster)
+     * @param beta int number of candidate insertion points to consider
+     * @param gamma int degree of randomness in initial trip request selection
+     * @param capacity vehicle capacity
+     * @param nIterations number of iterations for each cluster
+     * @param nSearchIterations number of search iterations for each cluster
+     */
+    public DecompositionSolver(List<TripRequest> requests, TravelTimeProvider matrix, int beta, int gamma, int capacity, int nIterations, int nSearchIterations) {
+        this.requests = requests;
+        this.matrix = matrix;
+        this.beta = beta;
+        this.gamma = gamma;
+        this.capacity = capacity;
+        this.nIterations = nIterations;
+        this.nSearchIterations = nSearchIterations;
+    }
+
+    /**
+     * @param nClusters int number of clusters solved separately
+     */
+    public void setClusters(int nClusters) {
+        this.nClusters = nClusters;
+    }
+
+    /**
+     * @param nThreads int number of clusters solved at once
+     */
+    public void setThreads(int nThreads) {
+        this.nThreads = nThreads;
+    }
+
+    /**
+     * @param executor ExecutorService the clusters are solved on instead of a pool of
+     * <code>nThreads</code> of their own, left running after the solve (may be null)
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param seed long seed from which the clustering and each cluster's random streams are derived
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param neighborhoodSearch boolean as Solver.setNeighborhoodSearch
+     */
+    public void setNeighborhoodSearch(boolean neighborhoodSearch) {
+        this.neighborhoodSearch = neighborhoodSearch;
+    }
+
+    /**
+     * Run the algorithm
+     * @return List<Vehicle> resulting list of vehicles and their corresponding schedule
+     */
+    public List<Vehicle> solve() {
+        int[] assignment = TripClusterer.cluster(requests, nClusters, new Random(seed));
+        List<List<TripRequest>> clusters = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            while (clusters.size() <= assignment[i]) {
+                clusters.add(new ArrayList<>());
+            }
+            clusters.get(assignment[i]).add(requests.get(i));
+        }
+
+        List<Callable<List<Vehicle>>> tasks = new ArrayList<>();
+        for (int c = 0; c < clusters.size(); c++) {
+            final List<TripRequest> cluster = clusters.get(c);
+            final long clusterSeed = seed + c;
+            if (cluster.isEmpty()) {
+                continue;
+            }
+            tasks.add(() -> {
+                Solver solver = new Solver(cluster, new AllPairsShortestPathMatrix(cluster), beta, gamma, capacity, nIterations, nSearchIterations);
+                solver.setSeed(clusterSeed);
+                solver.setNeighborhoodSearch(neighborhoodSearch);
+                return solver.solve();
+            });
+        }
+        List<Vehicle> pieces = new ArrayList<>();
+        ExecutorService pool = executor != null ? executor : Executors.newFixedThreadPool(Math.max(1, nThreads));
+        try {
+            for (Future<List<Vehicle>> f : pool.invokeAll(tasks)) {
+                for (Vehicle v : f.get()) {
+                    splitWhereEmpty(v, pieces);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while solving", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Cluster solve failed", ex.getCause());
+        } finally {
+            if (pool != executor) {
+                pool.shutdownNow();
+            }
+        }
+
+        List<Vehicle> fleet = reinsertSingleTrips(pieces);
+        RouteChainer.chain(fleet, matrix);
+        int idx = 0;
+        for (Vehicle v : fleet) {
+            v.setVehicleId(idx++);
+            v.getRoute().calculateObjective(matrix, Solver.ALPHA);
+        }
+        return fleet;
+    }
+
+    /**
+     * Split a vehicle's route after every point where the vehicle is left empty
+     * @param v Vehicle
+     * @param pieces List<Vehicle> a vehicle for each piece is added
+     */
+    private void splitWhereEmpty(Vehicle v, List<Vehicle> pieces) {
+        Vehicle piece = null;
+        for (Point pt : v.getRoute().getSchedule()) {
+            if (piece == null) {
+                piece = new Vehicle(0, matrix, capacity);
+            }
+            piece.getRoute().append(pt);
+            if (pt.isSource()) {
+                piece.getServicing().put(pt.getTripId(), v.getServicing().get(pt.getTripId()));
+            }
+            if (pt.getLoad() == 0) {
+                pieces.add(piece);
+                piece = null;
+            }
+        }
+    }
+
+    /**
+     * Move each trip served by a vehicle of its own into the route, of any cluster, where
+     * it gains the most objective, if that is at least what it scores on its own.  Only
+     * routes that start late enough to still be running when the trip departs are tried.
+     * A route that takes a trip keeps its place in the search order, so the bounds on the
+     * routes tried widen by however far such routes have moved from their sorted start
+     * @param fleet List<Vehicle>
+     * @return List<Vehicle> fleet without the vehicles whose trip was moved, by start time
+     */
+    private List<Vehicle> reinsertSingleTrips(List<Vehicle> fleet) {
+        for (Vehicle v : fleet) {
+            v.getRoute().calculateObjective(matrix, Solver.ALPHA);
+        }
+        //routes by start time, with the longest duration bounding how early a useful route can start,
+        //and drift how much earlier than its sorted start any route now starts
+        Vehicle[] byStart = fleet.toArray(new Vehicle[fleet.size()]);
+        Arrays.sort(byStart, (Vehicle a, Vehicle b) -> Integer.compare(first(a).getServiceTime(), first(b).getServiceTime()));
+        int[] starts = new int[byStart.length];
+        int maxDuration = 0;
+        int drift = 0;
+        for (int i = 0; i < byStart.length; i++) {
+            starts[i] = first(byStart[i]).getServiceTime();
+            maxDuration = Math.max(maxDuration, last(byStart[i]).getServiceTime() - starts[i]);
+        }
+
+        boolean[] removed = new boolean[byStart.length];
+        for (int i = 0; i < byStart.length; i++) {
+            if (byStart[i].getServicing().size() != 1) {
+                continue;
+            }
+            TripRequest tr = byStart[i].getServicing().values().iterator().next();
+            Vehicle best = null;
+            int bestIdx = -1;
+            Route bestRoute = null;
+            double bestGain = byStart[i].getRoute().getObjective();
+            int from = lowerBound(starts, tr.getSource().getEarliest() - maxDuration);
+            int to = lowerBound(starts, tr.getDestination().getLatest() + 1 + drift);
+            for (int j = from; j < to; j++) {
+                if (j == i || removed[j]) {
+                    continue;
+                }
+                Route route = byStart[j].getRoute();
+                Point last = last(byStart[j]);
+                //a dropoff is never inserted after the last point, so it must be able to reach it
+                if (matrix.getTravelTime(tr.getDestination(), last) > last.getLatest() - tr.getDestination().getEarliest()) {
+                    continue;
+                }
+                Route newRoute = Solver.attemptSearchInsertion(matrix, route, tr, Solver.ALPHA, capacity);
+                if (newRoute != null && newRoute.getObjective() - route.getObjective() >= bestGain) {
+                    bestGain = newRoute.getObjective() - route.getObjective();
+                    best = byStart[j];
+                    bestIdx = j;
+                    bestRoute = newRoute;
+                }
+            }
+            if (best != null) {
+                best.setRoute(bestRoute);
+                best.getServicing().put(tr.getTripId(), tr);
+                removed[i] = true;
+                //the trip may have moved the route's start or end, measured from its sorted start
+                drift = Math.max(drift, starts[bestIdx] - first(best).getServiceTime());
+                maxDuration = Math.max(maxDuration, last(best).getServiceTime() - starts[bestIdx]);
+            }
+        }
+
+        List<Vehicle> result = new ArrayList<>();
+        for (int i = 0; i < byStart.length; i++) {
+            if (!removed[i]) {
+                result.add(byStart[i]);
+            }
+        }
+        result.sort((Vehicle a, Vehicle b) -> Integer.compare(first(a).getServiceTime(), first(b).getServiceTime()));
+        return result;
+    }
+
+    /**
+     * @return int first index whose value is at least key
+     */
+    private static int lowerBound(int[] values, int key) {
+        int lo = 0, hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static Point first(Vehicle v) {
+        return v.getRoute().getSchedule().get(0);
+    }
+
+    private static Point last(Vehicle v) {
+        List<Point> schedule = v.getRoute().getSchedule();
+        return schedule.get(schedule.size() - 1);
+    }
+}
@@ -0,0 +1,232 @@
+package ridesharing.algorithm;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import ridesharing.model.Point;
+import ridesharing.model.Route;
+import ridesharing.model.TripRequest;
+
+/**
+ * Unserved trip requests of the vehicle being built, kept in a binary min-heap on the
+ * greedy function (delay to reach the source plus delay to reach the destination from
+ * the closest points of the route).  Delays are kept up to date incrementally: after
+ * the route changes only the points that are new or whose service time moved are
+ * looked at, unless the point a request's minimum came from has itself changed
+ * @author aengusmccullough
+ */
+class DelayQueue {
+
+    private Entry[] heap;
+    private int size;
+    private Map<Point, Integer> serviceTimes;  //service time of each route point at the last update
+
+    /**
+     * @param requests List<TripRequest> all trip requests
+     * @param unserved Worklist positions in requests of the unserved trip requests
+     * @param route Route route of the vehicle being built
+     */
+    DelayQueue(List<TripRequest> requests, Worklist unserved, Route route) {
+        heap = new Entry[unserved.size()];
+        for (int i = 0; i < unserved.size(); i++) {
+            Entry e = new Entry(unserved.get(i), requests.get(unserved.get(i)));
+            e.evaluate(route.getSchedule());
+            heap[size++] = e;
+        }
+        serviceTimes = snapshot(route);
+        heapify();
+    }
+
+    /**
+     * Bring the delays up to date after the route has changed
+     * @param route Route
+     */
+    void update(Route route) {
+        Map<Point, Integer> current = snapshot(route);
+        List<Point> changed = new ArrayList<>();
+        for (Map.Entry<Point, Integer> pt : current.entrySet()) {
+            if (!pt.getValue().equals(serviceTimes.get(pt.getKey()))) {
+                changed.add(pt.getKey());
+            }
+        }
+        if (changed.isEmpty() && current.size() == serviceTimes.size()) {
+            return;
+        }
+        for (int i = 0; i < size; i++) {
+            Entry e = heap[i];
+            if (isStale(e.srcAt, current) || isStale(e.destAt, current)) {
+                //the minimum may have got worse, so look at the whole route again
+                e.evaluate(route.getSchedule());
+            } else {
+                //the other points are unchanged, so the minimum can only get better
+                e.improve(changed);
+            }
+        }
+        serviceTimes = current;
+        heapify();
+    }
+
+    /**
+     * Remove the k-th smallest delay (0 based), walking the heap best first so that
+     * only about k entries are looked at
+     * @param k int
+     * @return int position of the trip request
+     */
+    int remove(int k) {
+        int[] frontier = new int[k + 3];   //heap slots still to visit, itself a min-heap on delay
+        int nFrontier = 0;
+        frontier[nFrontier++] = 0;
+        int slot = 0;
+        for (int i = 0; i <= k; i++) {
+            slot = frontier[0];
+            frontier[0] = frontier[--nFrontier];
+            siftDown(frontier, nFrontier, 0);
+            for (int child = 2 * slot + 1; child <= 2 * slot + 2 && child < size; child++) {
+                frontier[nFrontier] = child;
+                siftUp(frontier, nFrontier++);
+            }
+        }
+        int position = heap[slot].position;
+        heap[slot] = heap[--size];
+        heap[size] = null;
+        if (slot < size) {
+            siftDown(slot);
+            siftUp(slot);
+        }
+        return position;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static Map<Point, Integer> snapshot(Route route) {
+        Map<Point, Integer> result = new IdentityHashMap<>();
+        for (Point pt : route.getSchedule()) {
+            result.put(pt, pt.getServiceTime());
+        }
+        return result;
+    }
+
+    private boolean isStale(Point pt, Map<Point, Integer> current) {
+        if (pt == null) {
+            return false;
+        }
+        Integer serviceTime = current.get(pt);
+        return serviceTime == null || !serviceTime.equals(serviceTimes.get(pt));
+    }
+
+    private void heapify() {
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    private void siftDown(int i) {
+        Entry e = heap[i];
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1].delay < heap[child].delay) {
+                child++;
+            }
+            if (heap[child].delay >= e.delay) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = e;
+    }
+
+    private void siftUp(int i) {
+        Entry e = heap[i];
+        while (i > 0 && heap[(i - 1) / 2].delay > e.delay) {
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = e;
+    }
+
+    //min-heap of heap slots, ordered by the delay of the entry in the slot
+
+    private void siftDown(int[] slots, int n, int i) {
+        int s = slots[i];
+        while (2 * i + 1 < n) {
+            int child = 2 * i + 1;
+            if (child + 1 < n && heap[slots[child + 1]].delay < heap[slots[child]].delay) {
+                child++;
+            }
+            if (heap[slots[child]].delay >= heap[s].delay) {
+                break;
+            }
+            slots[i] = slots[child];
+            i = child;
+        }
+        slots[i] = s;
+    }
+
+    private void siftUp(int[] slots, int i) {
+        int s = slots[i];
+        while (i > 0 && heap[slots[(i - 1) / 2]].delay > heap[s].delay) {
+            slots[i] = slots[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        slots[i] = s;
+    }
+
+    private static final class Entry {
+
+        private final int position;     //position of the request in the list of all requests
+        private final TripRequest request;
+        private double minSrc = Double.POSITIVE_INFINITY;
+        private double minDest = Double.POSITIVE_INFINITY;
+        private Point srcAt;        //route point the source delay comes from
+        private Point destAt;       //route point the destination delay comes from
+        private double delay = Double.POSITIVE_INFINITY;
+
+        private Entry(int position, TripRequest request) {
+            this.position = position;
+            this.request = request;
+        }
+
+        /**
+         * Reset the minimums and take them over all of the route's points
+         */
+        private void evaluate(List<Point> schedule) {
+            minSrc = Double.POSITIVE_INFINITY;
+            minDest = Double.POSITIVE_INFINITY;
+            srcAt = null;
+            destAt = null;
+            improve(schedule);
+        }
+
+        /**
+         * Lower the minimums using the given points.  The destination delay is infinite from
+         * points served at or after the destination's latest time, so it is not computed for them
+         */
+        private void improve(List<Point> points) {
+            int latest = request.getDestination().getLatest();
+            for (Point pt : points) {
+                double src = Solver.calcSourcePointDelay(pt, request.getSource());
+                if (src < minSrc) {
+                    minSrc = src;
+                    srcAt = pt;
+                }
+                if (pt.getServiceTime() >= latest) {
+                    continue;
+                }
+                double dest = Solver.calcDestPointDelay(pt, request.getDestination());
+                if (dest < minDest) {
+                    minDest = dest;
+                    destAt = pt;
+                }
+            }
+            delay = minSrc + minDest;
+        }
+    }
+}
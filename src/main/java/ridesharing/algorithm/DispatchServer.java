@@ -0,0 +1,414 @@
+package ridesharing.algorithm;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import ridesharing.model.LazyTravelTimeProvider;
+import ridesharing.model.Point;
+import ridesharing.model.TravelTimeProvider;
+import ridesharing.model.TripRequest;
+import ridesharing.model.Vehicle;
+
+/**
+ * Long running dispatch service, so a dispatch call does not pay for starting a JVM.
+ * Batches of trip requests are POSTed to <code>/dispatch</code>, in the input file
+ * format or as JSON (see InputParser), and the itineraries of the vehicles serving them
+ * are returned in the same format.  Batches that arrive within the coalescing window
+ * of each other are solved together by a single Solver run, so their trips can share
+ * vehicles; each caller is returned the vehicles serving its own trips, with only its
+ * own stops.  The GRASP worker pool and the travel time provider are kept between runs:
+ * travel times are computed on demand, as every batch brings new nodes, so no matrix
+ * is built per call
+ * @author aengusmccullough
+ */
+public class DispatchServer {
+
+    private static final int HANDLER_THREADS = 16;
+    private static final int MAX_BODY_BYTES = 16 << 20;     //larger calls are refused with 413
+
+    private final TravelTimeProvider matrix = new LazyTravelTimeProvider();
+    private final int beta;
+    private final int gamma;
+    private final int capacity;
+    private final int nIterations;
+    private final int nSearchIterations;
+    private int nThreads = 1;
+    private long timeLimit;
+    private long window = 20;           //milliseconds a batch waits for others to be solved with
+    private Long seed;                  //seed of every run (null = a new one each run)
+    private List<Batch> pending = new ArrayList<>();    //batches waiting for the next run
+    private HttpServer server;
+    private ExecutorService handlers;           //threads HTTP exchanges are handled (and wait) on
+    private ScheduledExecutorService runner;    //thread coalesced runs are made on, one at a time
+    private ExecutorService workers;            //GRASP workers shared by the runs
+
+    /**
+     * Constructor, as Solver
+     *
+     * @param beta int number of candidate insertion points to consider
+     * @param gamma int degree of randomness in initial trip request selection
+     * @param capacity vehicle capacity
+     * @param nIterations number of iterations of each run
+     * @param nSearchIterations number of search iterations of each run
+     */
+    public DispatchServer(int beta, int gamma, int capacity, int nIterations, int nSearchIterations) {
+        this.beta = beta;
+        this.gamma = gamma;
+        this.capacity = capacity;
+        this.nIterations = nIterations;
+        this.nSearchIterations = nSearchIterations;
+    }
+
+    /**
+     * @param nThreads int number of worker threads used by each run
+     */
+    public void setThreads(int nThreads) {
+        this.nThreads = nThreads;
+    }
+
+    /**
+     * @param timeLimit long milliseconds each run solves for, as Solver.setTimeLimit (0 = no limit)
+     */
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * @param window long milliseconds a batch waits for further batches to be solved with it
+     */
+    public void setCoalesceWindow(long window) {
+        this.window = window;
+    }
+
+    /**
+     * @param seed long seed of every run, for repeatable results
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Start the worker threads and listen for dispatch calls
+     * @param port int port to listen on (0 = any free port)
+     * @return int port listened on
+     * @throws IOException if the port cannot be bound
+     */
+    public synchronized int start(int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Already started");
+        }
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/dispatch", this::handle);
+        handlers = Executors.newFixedThreadPool(HANDLER_THREADS);
+        server.setExecutor(handlers);
+        runner = Executors.newSingleThreadScheduledExecutor();
+        workers = Executors.newFixedThreadPool(Math.max(1, nThreads));
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop listening, failing any batches not yet solved, and stop the worker threads
+     */
+    public synchronized void stop() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        runner.shutdownNow();
+        workers.shutdownNow();
+        handlers.shutdownNow();
+        for (Batch batch : pending) {
+            batch.result.completeExceptionally(new IllegalStateException("Server stopped"));
+        }
+        pending = new ArrayList<>();
+        server = null;
+    }
+
+    /**
+     * Queue a batch of trip requests to be solved with any others that arrive within the
+     * coalescing window
+     * @param requests List<TripRequest> trip requests with distinct trip ids (their time
+     * windows and trip ids are updated while solving)
+     * @return Future<List<Vehicle>> vehicles serving the batch's trips, each with a route of
+     * only its stops for them
+     */
+    public synchronized Future<List<Vehicle>> submit(List<TripRequest> requests) {
+        if (server == null) {
+            throw new IllegalStateException("Not started");
+        }
+        Batch batch = new Batch(requests);
+        if (requests.isEmpty()) {
+            batch.result.complete(new ArrayList<>());
+            return batch.result;
+        }
+        pending.add(batch);
+        if (pending.size() == 1) {
+            runner.schedule(this::solvePending, window, TimeUnit.MILLISECONDS);
+        }
+        return batch.result;
+    }
+
+    /**
+     * Solve every pending batch together.  Trips are renumbered so ids from different
+     * batches cannot clash, and numbered back in the routes returned to each batch
+     */
+    private void solvePending() {
+        List<Batch> batches;
+        synchronized (this) {
+            batches = pending;
+            pending = new ArrayList<>();
+        }
+        //every batch is completed whatever is thrown, so no caller is left waiting
+        try {
+            List<TripRequest> requests = new ArrayList<>();
+            List<Batch> owner = new ArrayList<>();      //batch of each trip, by new trip id
+            List<Integer> tripIds = new ArrayList<>();  //original id of each trip, by new trip id
+            for (Batch batch : batches) {
+                for (TripRequest tr : batch.requests) {
+                    tripIds.add(tr.getTripId());
+                    owner.add(batch);
+                    setTripId(tr, requests.size());
+                    tr.updateTimeWindows(matrix);
+                    requests.add(tr);
+                }
+            }
+            Solver solver = new Solver(requests, matrix, beta, gamma, capacity, nIterations, nSearchIterations);
+            solver.setThreads(nThreads);
+            solver.setExecutor(workers);
+            solver.setTimeLimit(timeLimit);
+            if (seed != null) {
+                solver.setSeed(seed);
+            }
+            List<Vehicle> result = solver.solve();
+
+            for (TripRequest tr : requests) {
+                setTripId(tr, tripIds.get(tr.getTripId()));
+            }
+            Map<Batch, List<Vehicle>> byBatch = new IdentityHashMap<>();
+            for (Batch batch : batches) {
+                byBatch.put(batch, new ArrayList<>());
+            }
+            for (Vehicle v : result) {
+                Map<Batch, Vehicle> views = new IdentityHashMap<>();
+                for (Point pt : v.getRoute().getSchedule()) {
+                    Batch batch = owner.get(pt.getTripId());
+                    Vehicle view = views.get(batch);
+                    if (view == null) {
+                        view = new Vehicle(v.getVehicleId(), matrix, capacity);
+                        view.getRoute().setObjective(v.getRoute().getObjective());
+                        views.put(batch, view);
+                        byBatch.get(batch).add(view);
+                    }
+                    Point own = new Point(pt);
+                    own.setTripId(tripIds.get(pt.getTripId()));
+                    view.getRoute().append(own);
+                    view.getServicing().put(own.getTripId(), v.getServicing().get(pt.getTripId()));
+                }
+            }
+            for (Batch batch : batches) {
+                batch.result.complete(byBatch.get(batch));
+            }
+        } catch (Throwable ex) {
+            for (Batch batch : batches) {
+                batch.result.completeExceptionally(ex);
+            }
+            if (ex instanceof Error) {
+                throw (Error) ex;
+            }
+        }
+    }
+
+    private static void setTripId(TripRequest tr, int tripId) {
+        tr.setTripId(tripId);
+        tr.getSource().setTripId(tripId);
+        tr.getDestination().setTripId(tripId);
+    }
+
+    /**
+     * Handle a dispatch call: parse the batch, wait for it to be solved and respond with
+     * the itineraries, as JSON if the batch was JSON
+     * @param exchange HttpExchange
+     * @throws IOException
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respond(exchange, 405, "text/plain", "Trip requests must be POSTed\n");
+                return;
+            }
+            String body = readBody(exchange);
+            if (body == null) {
+                respond(exchange, 413, "text/plain", "Request body larger than " + MAX_BODY_BYTES + " bytes\n");
+                return;
+            }
+            boolean json = body.trim().startsWith("{") || body.trim().startsWith("[");
+            List<TripRequest> requests;
+            try {
+                requests = json ? InputParser.parseJson(body) : InputParser.parse(new BufferedReader(new StringReader(body)));
+                checkTripIds(requests);
+                checkTimeWindows(requests);
+            } catch (IOException ex) {
+                respond(exchange, 400, "text/plain", ex.getMessage() + "\n");
+                return;
+            }
+            List<Vehicle> vehicles;
+            try {
+                vehicles = submit(requests).get();
+            } catch (ExecutionException | IllegalStateException ex) {
+                respond(exchange, 500, "text/plain", "Dispatch failed: " + ex.getMessage() + "\n");
+                return;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                respond(exchange, 503, "text/plain", "Server stopping\n");
+                return;
+            }
+            if (json) {
+                respond(exchange, 200, "application/json", toJson(vehicles));
+            } else {
+                StringBuilder sb = new StringBuilder();
+                for (Vehicle v : vehicles) {
+                    sb.append("Itinerary for vehicle ").append(v.getVehicleId()).append(":\n").append(v.getItinerary());
+                }
+                respond(exchange, 200, "text/plain", sb.toString());
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @param requests List<TripRequest>
+     * @throws IOException if two requests have the same trip id
+     */
+    private static void checkTripIds(List<TripRequest> requests) throws IOException {
+        Set<Integer> seen = new HashSet<>();
+        for (TripRequest tr : requests) {
+            if (!seen.add(tr.getTripId())) {
+                throw new IOException("Duplicate trip id " + tr.getTripId());
+            }
+        }
+    }
+
+    /**
+     * Reject a batch with a trip that cannot arrive by its arrive before time even when
+     * driven directly, as no vehicle could serve it
+     * @param requests List<TripRequest>
+     * @throws IOException naming the first such trip
+     */
+    private void checkTimeWindows(List<TripRequest> requests) throws IOException {
+        for (TripRequest tr : requests) {
+            int travelTime = (int) Math.ceil(tr.travelTime(matrix));
+            if (tr.getSource().getEarliest() + travelTime > tr.getDestination().getLatest()) {
+                throw new IOException("Trip " + tr.getTripId() + " cannot arrive before " + formatTime(tr.getDestination().getLatest())
+                        + ": it departs after " + formatTime(tr.getSource().getEarliest()) + " and takes " + travelTime + " minutes");
+            }
+        }
+    }
+
+    /**
+     * @param exchange HttpExchange
+     * @return String the request body, or null if it is longer than MAX_BODY_BYTES
+     * @throws IOException
+     */
+    private static String readBody(HttpExchange exchange) throws IOException {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        try {
+            if (length != null && Long.parseLong(length.trim()) > MAX_BODY_BYTES) {
+                return null;
+            }
+        } catch (NumberFormatException ex) {
+            //the length read is checked below
+        }
+        InputStream in = exchange.getRequestBody();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            if (out.size() + n > MAX_BODY_BYTES) {
+                return null;
+            }
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * @param vehicles List<Vehicle>
+     * @return String the vehicles' itineraries as a JSON document
+     */
+    static String toJson(List<Vehicle> vehicles) {
+        StringBuilder sb = new StringBuilder("{\"vehicles\": [");
+        for (int i = 0; i < vehicles.size(); i++) {
+            Vehicle v = vehicles.get(i);
+            sb.append(i > 0 ? ",\n  " : "\n  ")
+                    .append("{\"vehicleId\": ").append(v.getVehicleId())
+                    .append(", \"objective\": ").append(v.getRoute().getObjective())
+                    .append(", \"stops\": [");
+            List<Point> schedule = v.getRoute().getSchedule();
+            for (int j = 0; j < schedule.size(); j++) {
+                Point pt = schedule.get(j);
+                sb.append(j > 0 ? ", " : "")
+                        .append("{\"time\": \"").append(formatTime(pt.getServiceTime()))
+                        .append("\", \"type\": \"").append(pt.isSource() ? "pickup" : "dropoff")
+                        .append("\", \"tripId\": ").append(pt.getTripId())
+                        .append(", \"requester\": ").append(Json.quote(v.getServicing().get(pt.getTripId()).getRequester()))
+                        .append("}");
+            }
+            sb.append("]}");
+        }
+        return sb.append(vehicles.isEmpty() ? "]}\n" : "\n]}\n").toString();
+    }
+
+    /**
+     * @param minuteOfDay int
+     * @return String time as H:mm (wraps past midnight, as itineraries)
+     */
+    private static String formatTime(int minuteOfDay) {
+        int minute = Math.floorMod(minuteOfDay, 24 * 60);
+        return String.format("%d:%02d", minute / 60, minute % 60);
+    }
+
+    /**
+     * A caller's trip requests and the vehicles serving them, once solved
+     */
+    private static class Batch {
+
+        private final List<TripRequest> requests;
+        private final CompletableFuture<List<Vehicle>> result = new CompletableFuture<>();
+
+        Batch(List<TripRequest> requests) {
+            this.requests = requests;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package ridesharing.algorithm;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import ridesharing.model.Point;
+import ridesharing.model.Route;
+import ridesharing.model.TravelTimeProvider;
+import ridesharing.model.TripRequest;
+import ridesharing.model.Vehicle;
+
+/**
+ * Online dispatcher: trip requests are inserted into the current fleet's routes one at a
+ * time as they arrive, rather than solving the whole set at once.  Each request goes to
+ * the vehicle whose route gains the most objective by taking it.  Failing that it is
+ * appended to a route that can reach its pickup in time, as the routes are chained
+ * after solving, and a new vehicle is opened only if no route can take it.
+ * The plan can be re-optimized in the background with the neighbourhood search; that
+ * works on a copy, so dispatching is not held up, and requests dispatched meanwhile are
+ * inserted into the improved plan before it replaces the current one.
+ * A vehicle keeps its id for as long as it has a route, but a re-optimization may move
+ * a trip to another vehicle, or empty the vehicle a trip was dispatched to: the vehicle
+ * currently serving a trip is given by getVehicleId, and each move is reported to the
+ * ReassignmentListener, if any.
+ * The travel time provider must handle nodes of requests it was not built with (e.g.
+ * LazyTravelTimeProvider without a cache)
+ * @author aengusmccullough
+ */
+public class Dispatcher {
+
+    private final TravelTimeProvider matrix;
+    private final int capacity;
+    private List<Vehicle> vehicles = new ArrayList<>();
+    private int nextVehicleId;
+    private final Map<Integer, Integer> assignment = new HashMap<>();    //trip id to id of the vehicle serving it
+    private ReassignmentListener listener;
+    private List<TripRequest> dispatchedSinceCopy;      //while re-optimizing, otherwise null
+    private ScheduledExecutorService reoptimizer;
+    private ForkJoinPool searchPool;
+    private int nSearchRounds = 50;
+
+    /**
+     * @param matrix TravelTimeProvider
+     * @param capacity int vehicle capacity
+     */
+    public Dispatcher(TravelTimeProvider matrix, int capacity) {
+        this.matrix = matrix;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @param nSearchRounds int most moves applied by each re-optimization (default 50)
+     */
+    public void setSearchRounds(int nSearchRounds) {
+        this.nSearchRounds = nSearchRounds;
+    }
+
+    /**
+     * @param listener ReassignmentListener told of each trip request moved to another vehicle by a re-optimization (may be null)
+     */
+    public synchronized void setReassignmentListener(ReassignmentListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Insert a trip request into the plan
+     * @param tr TripRequest (its time windows are updated)
+     * @return int id of the vehicle that will serve it, until a re-optimization moves it
+     */
+    public synchronized int dispatch(TripRequest tr) {
+        tr.updateTimeWindows(matrix);
+        if (dispatchedSinceCopy != null) {
+            dispatchedSinceCopy.add(tr);
+        }
+        int vehicleId = insert(vehicles, tr);
+        assignment.put(tr.getTripId(), vehicleId);
+        return vehicleId;
+    }
+
+    /**
+     * @param tripId int
+     * @return int id of the vehicle currently serving the trip request, or -1 if it has not been dispatched
+     */
+    public synchronized int getVehicleId(int tripId) {
+        Integer vehicleId = assignment.get(tripId);
+        return vehicleId != null ? vehicleId : -1;
+    }
+
+    /**
+     * @return List<Vehicle> copy of the current plan
+     */
+    public synchronized List<Vehicle> getVehicles() {
+        return copy(vehicles);
+    }
+
+    /**
+     * Re-optimize the plan every period until stopped
+     * @param period long
+     * @param unit TimeUnit
+     */
+    public synchronized void startReoptimization(long period, TimeUnit unit) {
+        if (reoptimizer != null) {
+            return;
+        }
+        searchPool = new ForkJoinPool(1);
+        reoptimizer = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread t = new Thread(r, "dispatcher-reoptimizer");
+            t.setDaemon(true);
+            return t;
+        });
+        reoptimizer.scheduleWithFixedDelay(this::scheduledReoptimize, period, period, unit);
+    }
+
+    /**
+     * Stop background re-optimization, waiting for a pass in progress to finish
+     */
+    public void stopReoptimization() {
+        ScheduledExecutorService executor;
+        ForkJoinPool pool;
+        synchronized (this) {
+            executor = reoptimizer;
+            pool = searchPool;
+            reoptimizer = null;
+            searchPool = null;
+        }
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * Re-optimize from the scheduler, which would stop running the task at the first
+     * exception: a failed pass is reported and the next one runs as planned
+     */
+    private void scheduledReoptimize() {
+        try {
+            reoptimize();
+        } catch (RuntimeException ex) {
+            System.err.println("Re-optimization failed: " + ex);
+        }
+    }
+
+    /**
+     * Improve a copy of the plan with the neighbourhood search, then insert the requests
+     * dispatched in the meantime and keep the result if it uses fewer vehicles, or as
+     * many with a higher objective.  Trip requests the result moves to another vehicle
+     * are reported to the listener.  If the pass fails the current plan is kept, and the
+     * next pass can still run
+     */
+    public void reoptimize() {
+        List<Vehicle> plan;
+        ForkJoinPool pool;
+        synchronized (this) {
+            if (dispatchedSinceCopy != null || vehicles.size() < 2) {
+                return;
+            }
+            plan = copy(vehicles);
+            dispatchedSinceCopy = new ArrayList<>();
+            pool = searchPool != null ? searchPool : ForkJoinPool.commonPool();
+        }
+        try {
+            plan = new NeighborhoodSearch(matrix, capacity, Solver.ALPHA, pool).improve(plan, nSearchRounds, () -> false);
+        } catch (Throwable ex) {
+            synchronized (this) {
+                dispatchedSinceCopy = null;
+            }
+            throw ex;
+        }
+        synchronized (this) {
+            try {
+                for (TripRequest tr : dispatchedSinceCopy) {
+                    insert(plan, tr);
+                }
+            } finally {
+                dispatchedSinceCopy = null;
+            }
+            int cmp = Integer.compare(plan.size(), vehicles.size());
+            if (cmp < 0 || (cmp == 0 && objective(plan) > objective(vehicles))) {
+                vehicles = plan;
+                reassign();
+            }
+        }
+    }
+
+    /**
+     * Bring the assignment of trips to vehicles up to date with the plan
+     */
+    private void reassign() {
+        for (Vehicle v : vehicles) {
+            for (int tripId : v.getServicing().keySet()) {
+                Integer previous = assignment.put(tripId, v.getVehicleId());
+                if (previous != null && previous != v.getVehicleId() && listener != null) {
+                    listener.reassigned(tripId, previous, v.getVehicleId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Insert a trip request into the route where it gains the most objective, or append it
+     * to a route, or give it a new vehicle, whichever gains the most; ties go to the
+     * existing vehicles
+     * @return int id of the vehicle
+     */
+    private int insert(List<Vehicle> plan, TripRequest tr) {
+        Vehicle best = null;
+        Route bestRoute = null;
+        double bestGain = 1 - Solver.ALPHA;    //objective of the trip on its own, appended or in a new vehicle
+        Vehicle append = null;
+        for (Vehicle v : plan) {
+            Route route = v.getRoute();
+            Point last = lastPoint(route);
+            //the pickup can follow the last point even if that is serviced at its latest
+            if (matrix.getTravelTime(last, tr.getSource()) <= tr.getSource().getEarliest() - last.getLatest()
+                    && (append == null || last.getLatest() > lastPoint(append.getRoute()).getLatest())) {
+                append = v;
+            }
+            //a dropoff is never inserted after the last point, so it must be able to reach it
+            if (matrix.getTravelTime(tr.getDestination(), last) > last.getLatest() - tr.getDestination().getEarliest()) {
+                continue;
+            }
+            Route newRoute = Solver.attemptSearchInsertion(matrix, route, tr, Solver.ALPHA, capacity);
+            if (newRoute != null && newRoute.getObjective() - route.getObjective() >= bestGain) {
+                bestGain = newRoute.getObjective() - route.getObjective();
+                best = v;
+                bestRoute = newRoute;
+            }
+        }
+        if (best != null) {
+            best.setRoute(bestRoute);
+        } else if (append != null) {
+            best = append;
+            appendTrip(best.getRoute(), tr);
+        } else {
+            best = new Vehicle(nextVehicleId++, matrix, capacity);
+            appendTrip(best.getRoute(), tr);
+            plan.add(best);
+        }
+        best.getServicing().put(tr.getTripId(), tr);
+        return best.getVehicleId();
+    }
+
+    /**
+     * Append the trip's pickup and dropoff to the end of a route, serviced at their earliest
+     */
+    private void appendTrip(Route route, TripRequest tr) {
+        //every passenger has been dropped off by the end of a route
+        Point src = new Point(tr.getSource());
+        src.setLoad(1);
+        src.setServiceTime(src.getEarliest());
+        route.append(src);
+        Point dest = new Point(tr.getDestination());
+        dest.setLoad(0);
+        dest.setServiceTime(dest.getEarliest());
+        route.append(dest);
+        route.calculateObjective(matrix, Solver.ALPHA);
+    }
+
+    private static Point lastPoint(Route route) {
+        return route.getSchedule().get(route.getSchedule().size() - 1);
+    }
+
+    private List<Vehicle> copy(List<Vehicle> plan) {
+        List<Vehicle> result = new ArrayList<>();
+        for (Vehicle v : plan) {
+            Vehicle c = new Vehicle(v.getVehicleId(), matrix, capacity);
+            c.setRoute(new Route(v.getRoute()));
+            c.getServicing().putAll(v.getServicing());
+            result.add(c);
+        }
+        return result;
+    }
+
+    private static double objective(List<Vehicle> plan) {
+        double obj = 0;
+        for (Vehicle v : plan) {
+            obj += v.getRoute().getObjective();
+        }
+        return obj;
+    }
+}
@@ -14,6 +14,7 @@ import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import ridesharing.model.Node;
 import ridesharing.model.TripRequest;
 
@@ -22,6 +23,9 @@ import ridesharing.model.TripRequest;
  * @author aengusmccullough
  */
 public class InputParser {
+
+    //members of a JSON trip, in the order of the values on a line of the input file
+    private static final String[] JSON_FIELDS = {"requester", "tripId", "departAfter", "arriveBefore", "x1", "y1", "x2", "y2"};
     
      /**
      * Reads the input file and turns it into a list of trip requests Input file
@@ -34,93 +38,202 @@ public class InputParser {
      * @throws IOException
      */
     public static List<TripRequest> parseInputFile(File f) throws IOException{
+        return parseInputFile(f, 1);
+    }
+
+    /**
+     * Reads the input file (see parseInputFile), splitting a large file into chunks at
+     * line boundaries that are parsed in parallel.  A binary trip file (see
+     * BinaryTripFile) is loaded instead
+     *
+     * @param f File input file
+     * @param nThreads int number of threads to parse on
+     * @return List<TripRequest> trip requests, in the order of the file
+     * @throws IOException
+     */
+    public static List<TripRequest> parseInputFile(File f, int nThreads) throws IOException{
+        if (BinaryTripFile.isBinary(f)) {
+            return BinaryTripFile.load(f);
+        }
+        //parsed straight from the mapped bytes, unless the file is too large to map
+        List<TripRequest> tripRequests = TripFileParser.parse(f, nThreads);
+        if (tripRequests != null) {
+            return tripRequests;
+        }
+        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(f))) {
+            return parse(bufferedReader);
+        }
+    }
+
+    /**
+     * Reads trip requests in the input file format (see parseInputFile) from a reader,
+     * which is left open
+     *
+     * @param bufferedReader BufferedReader
+     * @return List<TripRequest> trip requests
+     * @throws IOException
+     */
+    public static List<TripRequest> parse(BufferedReader bufferedReader) throws IOException{
     
-        DateTimeFormatter df = DateTimeFormatter.ofPattern("H:mm");        
         List<TripRequest> tripRequests = new ArrayList<>();
-        try (BufferedReader bufferedReader = new BufferedReader(new FileReader(f))) {
-            String line = "";
+        String line = "";
 
-            //1.  read first line to get number of records
-            int nRecords = 0;
-            if ((line = bufferedReader.readLine()) != null) {
-                try {
-                    nRecords = Integer.parseInt(line);
-                } catch (NumberFormatException ex) {
-                    throw new IOException("Error parsing file.  Expected number of records on first line");
-                }
-            } else {
-                throw new IOException("Error parsing file.  First line is empty");
+        //1.  read first line to get number of records
+        int nRecords = 0;
+        if ((line = bufferedReader.readLine()) != null) {
+            try {
+                nRecords = Integer.parseInt(line);
+            } catch (NumberFormatException ex) {
+                throw new IOException("Error parsing file.  Expected number of records on first line");
+            }
+        } else {
+            throw new IOException("Error parsing file.  First line is empty");
+        }
+        
+        //read each line...
+        int i = 0;
+        while ((line = bufferedReader.readLine()) != null) {
+            i++;
+            String[] values = line.split("\t");
+            if (values.length != 8) {
+                throw new IOException("Error parsing file.  Expected 8 values on line " + i);
             }
+            tripRequests.add(createTripRequest(values, "line " + i));
             
-            //read each line...
-            int i = 0;
-            while ((line = bufferedReader.readLine()) != null) {
-                i++;
-                String[] values = line.split("\t");
-                if (values.length != 8) {
-                    throw new IOException("Error parsing file.  Expected 8 values on line " + i);
-                }
-                TripRequest tr = new TripRequest();
-                Node source = new Node();
-                source.setSource(true);
-                Node dest = new Node();
-                dest.setSource(false);
-                
-                tr.setRequester(values[0]);
-                try {
-                    tr.setTripId(Integer.parseInt(values[1]));
-                    source.setTripId(tr.getTripId());                
-                    dest.setTripId(tr.getTripId());
-                } catch (NumberFormatException ex) {
-                    throw new IOException("Error parsing file.  Expected numeric trip identifier on line " + i);
-                }
-                
-                try {
-                    LocalTime departAfter = LocalTime.parse(values[2], df);
-                    source.setEarliest(departAfter);
-                    
-                } catch (DateTimeParseException ex) {                    
-                        throw new IOException("Error parsing file.  Depart after time must be in HH:mm format on line " + i);
-                    }
-                
-                try {
-                    LocalTime arriveBefore = LocalTime.parse(values[3], df);
-                    dest.setLatest(arriveBefore);
-                } catch (DateTimeParseException ex) {                    
-                        throw new IOException("Error parsing file.  Arrive before time must be in HH:mm format on line " + i);
-                    }
-
-                
-                try {
-                    int originX = Integer.parseInt(values[4]);
-                    int originY = Integer.parseInt(values[5]);
-                    source.setxCoord(originX);
-                    source.setyCoord(originY);                    
-                } catch (NumberFormatException ex) {
-                    throw new IOException("Error parsing file. Origin X Y Coordinates must be integers on line " + i);
-                }
+            if (i >= nRecords) {
+                break;
+            }
+        }
+        return tripRequests;
+    }
 
-                try {
-                    int destX = Integer.parseInt(values[6]);
-                    int destY = Integer.parseInt(values[7]);
-                    dest.setxCoord(destX);
-                    dest.setyCoord(destY);                    
-                } catch (NumberFormatException ex) {
-                    throw new IOException("Error parsing file. Destination X Y Coordinates must be integers on line " + i);
+    /**
+     * Reads trip requests from a JSON document: an array of trips, or an object with
+     * the array as its "trips" member.  Each trip is an object with the values of a line
+     * of the input file, e.g.
+     * <pre>{"requester": "Homer", "tripId": 1, "departAfter": "9:00", "arriveBefore": "11:03",
+     * "x1": 115, "y1": 391, "x2": 511, "y2": 283}</pre>
+     *
+     * @param json String
+     * @return List<TripRequest> trip requests
+     * @throws IOException
+     */
+    public static List<TripRequest> parseJson(String json) throws IOException{
+        Object doc = Json.parse(json);
+        if (doc instanceof Map) {
+            doc = ((Map<?, ?>) doc).get("trips");
+        }
+        if (!(doc instanceof List)) {
+            throw new IOException("Error parsing JSON.  Expected an array of trips");
+        }
+        List<TripRequest> tripRequests = new ArrayList<>();
+        int i = 0;
+        for (Object trip : (List<?>) doc) {
+            i++;
+            if (!(trip instanceof Map)) {
+                throw new IOException("Error parsing JSON.  Expected an object for trip " + i);
+            }
+            String[] values = new String[JSON_FIELDS.length];
+            for (int k = 0; k < JSON_FIELDS.length; k++) {
+                Object value = ((Map<?, ?>) trip).get(JSON_FIELDS[k]);
+                if (value == null) {
+                    throw new IOException("Error parsing JSON.  Expected " + JSON_FIELDS[k] + " for trip " + i);
                 }
-                //add nodes to trip request
-                tr.setSource(source);
-                tr.setDestination(dest);
-                //add trip request to list
-                tripRequests.add(tr);
-                
-                if (i >= nRecords) {
-                    break;
+                //whole numbers are written without a fraction, so they parse as integers
+                if (value instanceof Double && (Double) value == Math.rint((Double) value) && Math.abs((Double) value) < Integer.MAX_VALUE) {
+                    value = ((Double) value).intValue();
                 }
+                values[k] = value.toString();
             }
+            tripRequests.add(createTripRequest(values, "trip " + i));
         }
         return tripRequests;
     }
+
+    /**
+     * Create a trip request from the values of a line of the input file
+     *
+     * @param values String[] requester | tripid | depart after | arrive before | x1 | y1 | x2 | y2
+     * @param where String location of the values, for error messages
+     * @return TripRequest
+     * @throws IOException
+     */
+    private static TripRequest createTripRequest(String[] values, String where) throws IOException{
+        DateTimeFormatter df = DateTimeFormatter.ofPattern("H:mm");        
+        int tripId;
+        try {
+            tripId = Integer.parseInt(values[1]);
+        } catch (NumberFormatException ex) {
+            throw new IOException("Error parsing file.  Expected numeric trip identifier on " + where);
+        }
+        
+        int departAfter;
+        try {
+            departAfter = LocalTime.parse(values[2], df).toSecondOfDay() / 60;
+        } catch (DateTimeParseException ex) {                    
+                throw new IOException("Error parsing file.  Depart after time must be in HH:mm format on " + where);
+            }
+        
+        int arriveBefore;
+        try {
+            arriveBefore = LocalTime.parse(values[3], df).toSecondOfDay() / 60;
+        } catch (DateTimeParseException ex) {                    
+                throw new IOException("Error parsing file.  Arrive before time must be in HH:mm format on " + where);
+            }
+
+        int originX, originY;
+        try {
+            originX = Integer.parseInt(values[4]);
+            originY = Integer.parseInt(values[5]);
+        } catch (NumberFormatException ex) {
+            throw new IOException("Error parsing file. Origin X Y Coordinates must be integers on " + where);
+        }
+
+        int destX, destY;
+        try {
+            destX = Integer.parseInt(values[6]);
+            destY = Integer.parseInt(values[7]);
+        } catch (NumberFormatException ex) {
+            throw new IOException("Error parsing file. Destination X Y Coordinates must be integers on " + where);
+        }
+        return newTripRequest(values[0], tripId, departAfter, arriveBefore, originX, originY, destX, destY);
+    }
+
+    /**
+     * Create a trip request and its source and destination nodes from parsed values
+     *
+     * @param requester String
+     * @param tripId int
+     * @param departAfter int minute of day
+     * @param arriveBefore int minute of day
+     * @param originX int
+     * @param originY int
+     * @param destX int
+     * @param destY int
+     * @return TripRequest
+     */
+    static TripRequest newTripRequest(String requester, int tripId, int departAfter, int arriveBefore, int originX, int originY, int destX, int destY) {
+        TripRequest tr = new TripRequest();
+        Node source = new Node();
+        source.setSource(true);
+        Node dest = new Node();
+        dest.setSource(false);
+        
+        tr.setRequester(requester);
+        tr.setTripId(tripId);
+        source.setTripId(tripId);                
+        dest.setTripId(tripId);
+        source.setEarliest(departAfter);
+        dest.setLatest(arriveBefore);
+        source.setxCoord(originX);
+        source.setyCoord(originY);                    
+        dest.setxCoord(destX);
+        dest.setyCoord(destY);                    
+        //add nodes to trip request
+        tr.setSource(source);
+        tr.setDestination(dest);
+        return tr;
+    }
     
     
 }
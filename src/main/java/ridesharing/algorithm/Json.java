@@ -0,0 +1,299 @@
+package ridesharing.algorithm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON reader and string escaping for the dispatch server, so no library is
+ * needed.  Values are read as Map (object), List (array), String, Double, Boolean or null.
+ * Objects and arrays are read recursively, so their nesting depth is limited.  As the
+ * input comes from clients, anything outside the JSON grammar is rejected rather than
+ * guessed at
+ * @author aengusmccullough
+ */
+class Json {
+
+    private static final int MAX_DEPTH = 64;    //deepest nesting of objects and arrays read
+
+    private final String text;
+    private int pos;
+    private int depth;
+
+    private Json(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @param text String JSON document
+     * @return Object the value it holds
+     * @throws IOException if it is not valid JSON
+     */
+    static Object parse(String text) throws IOException {
+        Json json = new Json(text);
+        Object value = json.value();
+        json.skipWhitespace();
+        if (json.pos < text.length()) {
+            throw json.error("Unexpected content after value");
+        }
+        return value;
+    }
+
+    /**
+     * @param s String
+     * @return String s as a quoted JSON string
+     */
+    static String quote(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private Object value() throws IOException {
+        skipWhitespace();
+        if (pos >= text.length()) {
+            throw error("Unexpected end of input");
+        }
+        char c = text.charAt(pos);
+        if ((c == '{' || c == '[') && depth >= MAX_DEPTH) {
+            throw error("Nesting deeper than " + MAX_DEPTH);
+        }
+        switch (c) {
+            case '{':
+                depth++;
+                Map<String, Object> object = object();
+                depth--;
+                return object;
+            case '[':
+                depth++;
+                List<Object> array = array();
+                depth--;
+                return array;
+            case '"':
+                return string();
+            case 't':
+                return literal("true", Boolean.TRUE);
+            case 'f':
+                return literal("false", Boolean.FALSE);
+            case 'n':
+                return literal("null", null);
+            default:
+                return number();
+        }
+    }
+
+    private Map<String, Object> object() throws IOException {
+        Map<String, Object> result = new LinkedHashMap<>();
+        pos++;
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return result;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("Expected a string key");
+            }
+            String key = string();
+            skipWhitespace();
+            expect(':');
+            result.put(key, value());
+            skipWhitespace();
+            if (peek() == ',') {
+                pos++;
+            } else {
+                expect('}');
+                return result;
+            }
+        }
+    }
+
+    private List<Object> array() throws IOException {
+        List<Object> result = new ArrayList<>();
+        pos++;
+        skipWhitespace();
+        if (peek() == ']') {
+            pos++;
+            return result;
+        }
+        while (true) {
+            result.add(value());
+            skipWhitespace();
+            if (peek() == ',') {
+                pos++;
+            } else {
+                expect(']');
+                return result;
+            }
+        }
+    }
+
+    private String string() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        pos++;
+        while (true) {
+            if (pos >= text.length()) {
+                throw error("Unterminated string");
+            }
+            char c = text.charAt(pos++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c < 0x20) {
+                pos--;
+                throw error("Unescaped control character in string");
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= text.length()) {
+                throw error("Unterminated string");
+            }
+            char e = text.charAt(pos++);
+            switch (e) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = pos < text.length() ? Character.digit(text.charAt(pos), 16) : -1;
+                        if (digit < 0) {
+                            throw error("Bad unicode escape");
+                        }
+                        code = code * 16 + digit;
+                        pos++;
+                    }
+                    sb.append((char) code);
+                    break;
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append(e);
+                    break;
+                default:
+                    pos--;
+                    throw error("Bad escape");
+            }
+        }
+    }
+
+    /**
+     * Read -?(0|[1-9][0-9]*)(.[0-9]+)?([eE][+-]?[0-9]+)?, the only number form JSON allows
+     */
+    private Double number() throws IOException {
+        int start = pos;
+        if (peek() == '-') {
+            pos++;
+        }
+        if (peek() == '0') {
+            pos++;
+        } else if (digits() == 0) {
+            pos = start;
+            throw error("Unexpected character");
+        }
+        if (peek() == '.') {
+            pos++;
+            if (digits() == 0) {
+                throw error("Expected a digit");
+            }
+        }
+        if (peek() == 'e' || peek() == 'E') {
+            pos++;
+            if (peek() == '+' || peek() == '-') {
+                pos++;
+            }
+            if (digits() == 0) {
+                throw error("Expected a digit");
+            }
+        }
+        Double value = Double.valueOf(text.substring(start, pos));
+        if (value.isInfinite()) {
+            pos = start;
+            throw error("Number out of range");
+        }
+        return value;
+    }
+
+    /**
+     * @return int number of digits skipped
+     */
+    private int digits() {
+        int start = pos;
+        while (pos < text.length() && text.charAt(pos) >= '0' && text.charAt(pos) <= '9') {
+            pos++;
+        }
+        return pos - start;
+    }
+
+    private Object literal(String word, Object value) throws IOException {
+        if (!text.startsWith(word, pos)) {
+            throw error("Unexpected character");
+        }
+        pos += word.length();
+        return value;
+    }
+
+    private void expect(char c) throws IOException {
+        if (peek() != c) {
+            throw error("Expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private char peek() {
+        return pos < text.length() ? text.charAt(pos) : 0;
+    }
+
+    private void skipWhitespace() {
+        //only the four characters JSON counts as whitespace
+        while (pos < text.length() && " \t\n\r".indexOf(text.charAt(pos)) >= 0) {
+            pos++;
+        }
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at position " + pos);
+    }
+}
@@ -8,11 +8,17 @@ package ridesharing.algorithm;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import ridesharing.model.AllPairsShortestPathMatrix;
+import ridesharing.model.LazyTravelTimeProvider;
+import ridesharing.model.MappedTravelTimeMatrix;
+import ridesharing.model.TravelTimeProvider;
 import ridesharing.model.TripRequest;
 import ridesharing.model.Vehicle;
 
@@ -31,24 +37,95 @@ public class Main {
         final Map<String, String> clArgs = parseCommandLineArgs(args);
         validateArgs(clArgs);
         
-        
+        if (clArgs.containsKey("server")) {
+            serve(clArgs);
+            return;
+        }
 
         //2. Parse the input file
         File f = new File(clArgs.get("input"));
         List<TripRequest> tripRequests = null;
         try {
-            tripRequests = InputParser.parseInputFile(f);
+            tripRequests = InputParser.parseInputFile(f, clArgs.containsKey("threads") ? Integer.parseInt(clArgs.get("threads")) : 1);
         } catch (IOException ex) {
             exitWithException("Error parsing input file");
         }
 
-        //3. calculate the all pairs shortest path matrix
-        AllPairsShortestPathMatrix matrix = new AllPairsShortestPathMatrix(tripRequests);
+        //3-6. build the travel times and run the algorithm
+        List<Vehicle> result = null;
+        try {
+            result = solve(tripRequests, clArgs, System.out);
+        } catch (IOException ex) {
+            exitWithException(ex.getMessage());
+        }
+
+        //7. print output
+        for (Vehicle v : result) {
+            System.out.println("Itinerary for vehicle " + v.getVehicleId() + ":");
+            System.out.println(v.getItinerary());
+        }
+        
+        //8. write output
+        if(clArgs.containsKey("output")){
+            
+            String output = clArgs.get("output");
+            System.out.println("writing output: " + output);
+            try {
+                writeItineraries(result, new File(output));
+            } catch (IOException ex) {
+                exitWithException("An error occurred attempting to write output file to: " + output);
+            }
+        }
+    }
+
+    /**
+     * Build the travel times for the trip requests and run the algorithm with the given
+     * options (steps 3 to 6 of main)
+     * @param tripRequests List<TripRequest> parsed input
+     * @param clArgs Map<String,String> validated options
+     * @param log PrintStream progress messages are written to (null for none)
+     * @return List<Vehicle> resulting list of vehicles
+     * @throws IOException if a matrix file cannot be opened
+     */
+    static List<Vehicle> solve(List<TripRequest> tripRequests, Map<String, String> clArgs, PrintStream log) throws IOException {
+        return solve(tripRequests, clArgs, log, null);
+    }
+
+    /**
+     * As solve, with the solver workers run on a shared executor
+     * @param tripRequests List<TripRequest> parsed input
+     * @param clArgs Map<String,String> validated options
+     * @param log PrintStream progress messages are written to (null for none)
+     * @param executor ExecutorService as Solver.setExecutor (null = each solve creates its own pool)
+     * @return List<Vehicle> resulting list of vehicles
+     * @throws IOException if a matrix file cannot be opened
+     */
+    static List<Vehicle> solve(List<TripRequest> tripRequests, Map<String, String> clArgs, PrintStream log, ExecutorService executor) throws IOException {
+        //3. calculate the all pairs shortest path matrix, or compute travel times on demand
+        TravelTimeProvider matrix;
+        if (clArgs.containsKey("online") || clArgs.containsKey("horizon") || clArgs.containsKey("clusters")) {
+            //requests are not known in advance when dispatching online, and each window or cluster has its own matrix
+            matrix = new LazyTravelTimeProvider();
+        } else if ("lazy".equals(clArgs.get("matrix"))) {
+            int cacheSize = 0;
+            if (clArgs.containsKey("cache")) {
+                cacheSize = Integer.parseInt(clArgs.get("cache"));
+            }
+            matrix = new LazyTravelTimeProvider(tripRequests, cacheSize);
+        } else if ("mapped".equals(clArgs.get("matrix"))) {
+            String matrixFile = clArgs.containsKey("matrixfile") ? clArgs.get("matrixfile") : clArgs.get("input") + ".ttm";
+            try {
+                matrix = MappedTravelTimeMatrix.open(new File(matrixFile), tripRequests);
+            } catch (IOException ex) {
+                throw new IOException("Error opening matrix file: " + matrixFile, ex);
+            }
+        } else {
+            matrix = new AllPairsShortestPathMatrix(tripRequests);
+        }
 
         //4. update the trip requests with earliest / latest arrival departure information
         for (TripRequest tr : tripRequests) {
-            tr.getSource().setLatest(tr.getDestination().getLatest().minusMinutes((long) Math.ceil(tr.travelTime(matrix))));
-            tr.getDestination().setEarliest(tr.getSource().getEarliest().plusMinutes((long) Math.ceil(tr.travelTime(matrix))));
+            tr.updateTimeWindows(matrix);
         }
 
         //5. Set parameters
@@ -73,46 +150,139 @@ public class Main {
         if(clArgs.containsKey("s")){
             nSearchIterations = Integer.parseInt(clArgs.get("s"));
         }
+        int nThreads = 1;   //number of worker threads used to run GRASP iterations
+        if(clArgs.containsKey("threads")){
+            nThreads = Integer.parseInt(clArgs.get("threads"));
+        }
         
         //6. run algorithm
-        Solver solver = new Solver(tripRequests, matrix, beta, gamma, capacity, nIterations, nSearchIterations);
-        List<Vehicle> result = solver.solve();
+        List<Vehicle> result;
+        if(clArgs.containsKey("online")){
+            result = dispatchOnline(tripRequests, matrix, capacity, Long.parseLong(clArgs.get("online")), log);
+        } else if(clArgs.containsKey("horizon")){
+            RollingHorizonSolver solver = new RollingHorizonSolver(tripRequests, matrix, beta, gamma, capacity, nIterations, nSearchIterations);
+            int overlap = clArgs.containsKey("overlap") ? Integer.parseInt(clArgs.get("overlap")) : 30;
+            solver.setWindow(Integer.parseInt(clArgs.get("horizon")), overlap);
+            solver.setThreads(nThreads);
+            solver.setExecutor(executor);
+            solver.setNeighborhoodSearch("full".equals(clArgs.get("search")));
+            if(clArgs.containsKey("seed")){
+                solver.setSeed(Long.parseLong(clArgs.get("seed")));
+            }
+            result = solver.solve();
+        } else if(clArgs.containsKey("clusters")){
+            DecompositionSolver solver = new DecompositionSolver(tripRequests, matrix, beta, gamma, capacity, nIterations, nSearchIterations);
+            solver.setClusters(Integer.parseInt(clArgs.get("clusters")));
+            solver.setThreads(nThreads);
+            solver.setExecutor(executor);
+            solver.setNeighborhoodSearch("full".equals(clArgs.get("search")));
+            if(clArgs.containsKey("seed")){
+                solver.setSeed(Long.parseLong(clArgs.get("seed")));
+            }
+            result = solver.solve();
+        } else {
+            Solver solver = new Solver(tripRequests, matrix, beta, gamma, capacity, nIterations, nSearchIterations);
+            solver.setThreads(nThreads);
+            solver.setExecutor(executor);
+            solver.setNeighborhoodSearch("full".equals(clArgs.get("search")));
+            if(clArgs.containsKey("seed")){
+                solver.setSeed(Long.parseLong(clArgs.get("seed")));
+            }
+            if(clArgs.containsKey("time-limit")){
+                solver.setTimeLimit(Long.parseLong(clArgs.get("time-limit")));
+            }
+            if(clArgs.containsKey("time-limit") && log != null){
+                //report each better solution as it is found
+                final long start = System.nanoTime();
+                solver.setSolutionListener((int iteration, double objective, List<Vehicle> vehicles) ->
+                        log.println("Improved solution after " + (System.nanoTime() - start) / 1000000 + " ms: iteration "
+                                + iteration + ", " + vehicles.size() + " vehicles, objective " + objective));
+            }
+            result = solver.solve();
+        }
+        return result;
+    }
 
-        //7. print output
-        for (Vehicle v : result) {
-            System.out.println("Itinerary for vehicle " + v.getVehicleId() + ":");
-            System.out.println(v.getItinerary());
+    /**
+     * Run a dispatch server with the given options until the JVM is stopped
+     * @param clArgs Map<String,String> validated options
+     */
+    static void serve(Map<String, String> clArgs) {
+        DispatchServer server = new DispatchServer(
+                clArgs.containsKey("beta") ? Integer.parseInt(clArgs.get("beta")) : 5,
+                clArgs.containsKey("gamma") ? Integer.parseInt(clArgs.get("gamma")) : 25,
+                clArgs.containsKey("capacity") ? Integer.parseInt(clArgs.get("capacity")) : 3,
+                clArgs.containsKey("i") ? Integer.parseInt(clArgs.get("i")) : 100,
+                clArgs.containsKey("s") ? Integer.parseInt(clArgs.get("s")) : 50);
+        if (clArgs.containsKey("threads")) {
+            server.setThreads(Integer.parseInt(clArgs.get("threads")));
         }
-        
-        //8. write output
-        if(clArgs.containsKey("output")){
-            
-            String output = clArgs.get("output");
-            System.out.println("writing output: " + output);
-            File fo = new File(output);
-            FileWriter fw = null;
-            try {
-                 fw = new FileWriter(fo);
-                for (Vehicle r : result) {
-                    fw.write("Itinerary for vehicle " + r.getVehicleId() + ":\n");
-                    fw.write(r.getItinerary());
-                }
-                fw.write("\n");
-            } catch (IOException ex) {
-                exitWithException("An error occurred attempting to write output file to: " + output);                
-            }finally{
-                try {
-                    fw.flush();
-                    fw.close();
-                } catch (IOException ex) {
-                    ex.printStackTrace();
-                }
-                
+        if (clArgs.containsKey("time-limit")) {
+            server.setTimeLimit(Long.parseLong(clArgs.get("time-limit")));
+        }
+        if (clArgs.containsKey("coalesce")) {
+            server.setCoalesceWindow(Long.parseLong(clArgs.get("coalesce")));
+        }
+        if (clArgs.containsKey("seed")) {
+            server.setSeed(Long.parseLong(clArgs.get("seed")));
+        }
+        try {
+            int port = server.start(Integer.parseInt(clArgs.get("server")));
+            System.out.println("Listening for trip requests on http://localhost:" + port + "/dispatch");
+        } catch (IOException ex) {
+            exitWithException("Cannot start server: " + ex.getMessage());
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+    }
+
+    /**
+     * Write the itinerary of each vehicle to a file
+     * @param result List<Vehicle>
+     * @param fo File
+     * @throws IOException
+     */
+    static void writeItineraries(List<Vehicle> result, File fo) throws IOException {
+        try (FileWriter fw = new FileWriter(fo)) {
+            for (Vehicle r : result) {
+                fw.write("Itinerary for vehicle " + r.getVehicleId() + ":\n");
+                fw.write(r.getItinerary());
             }
-            
+            fw.write("\n");
         }
     }
 
+    /**
+     * Replay the trip requests, in order of departure time, through an online dispatcher
+     * as if they were arriving live, re-optimizing in the background
+     * @param tripRequests List<TripRequest>
+     * @param matrix TravelTimeProvider
+     * @param capacity int
+     * @param period long milliseconds between re-optimizations
+     * @param log PrintStream dispatch times are reported to (null for none)
+     * @return List<Vehicle> final plan
+     */
+    static List<Vehicle> dispatchOnline(List<TripRequest> tripRequests, TravelTimeProvider matrix, int capacity, long period, PrintStream log) {
+        tripRequests.sort((TripRequest o1, TripRequest o2) -> Integer.compare(o1.getSource().getEarliest(), o2.getSource().getEarliest()));
+        Dispatcher dispatcher = new Dispatcher(matrix, capacity);
+        dispatcher.startReoptimization(period, TimeUnit.MILLISECONDS);
+        long total = 0;
+        long max = 0;
+        for (TripRequest tr : tripRequests) {
+            long start = System.nanoTime();
+            dispatcher.dispatch(tr);
+            long elapsed = System.nanoTime() - start;
+            total += elapsed;
+            max = Math.max(max, elapsed);
+        }
+        dispatcher.stopReoptimization();
+        dispatcher.reoptimize();
+        if (log != null) {
+            log.println("Dispatched " + tripRequests.size() + " requests: mean " + total / Math.max(1, tripRequests.size()) / 1000
+                    + " us, max " + max / 1000 + " us per request");
+        }
+        return dispatcher.getVehicles();
+    }
+
     /**
      * print usage
      */
@@ -123,7 +293,20 @@ public class Main {
                 + " --beta <no. of candidate insertion points to consider>  (default 5) \n"
                 + " --gamma <level of randomization> (default 20)\n"
                 + " --i <no of iterations> (default 20)\n"
-                + " --s <no of search iterations> (default 50) \n ] \n"
+                + " --s <no of search iterations> (default 50) \n"
+                + " --threads <no of worker threads> (default 1) \n"
+                + " --search <random|full> random swaps or best improvement over whole neighbourhoods (default random) \n"
+                + " --seed <random seed for repeatable runs> \n"
+                + " --time-limit <milliseconds to solve for, instead of --i iterations; not with --online, --horizon or --clusters> \n"
+                + " --online <milliseconds between re-optimizations> dispatch requests one at a time in order of departure \n"
+                + " --horizon <minutes> solve departures in windows of this length, each with its own matrix \n"
+                + " --overlap <minutes at the end of each window solved again with the next> (default 30) \n"
+                + " --clusters <no of geographic clusters solved separately, on --threads threads> \n"
+                + " --server <port> instead of an input file, serve trip request batches POSTed to /dispatch \n"
+                + " --coalesce <milliseconds a batch waits to be solved with others, in server mode> (default 20) \n"
+                + " --matrix <eager|lazy|mapped> travel time computation (default eager; --online, --horizon and --clusters always compute on demand) \n"
+                + " --cache <no of cached travel times for lazy matrix> (default 0) \n"
+                + " --matrixfile <path_to_matrix_file for mapped matrix> (default <input>.ttm) \n ] \n"
                 + " --help";
         System.out.println(usage);
         System.exit(0);
@@ -139,11 +322,11 @@ public class Main {
         if (args.length > 0 && !args[0].startsWith("--")) {
             result.put("input", args[0]);
         }
-        for (int i = 1; i < args.length; i++) {
+        for (int i = 0; i < args.length; i++) {
             String arg = args[i];
             if (arg.startsWith("--")) {
                 arg = arg.replaceAll("--", "");
-                if (args.length >= i + 1 && !args[i + 1].startsWith("--")) {
+                if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
                     result.put(arg, args[i + 1]);
                 }
             }
@@ -175,6 +358,25 @@ public class Main {
                     break;
                 case "output":
                     break;
+                case "matrix":
+                    if (!"eager".equals(args.get(arg)) && !"lazy".equals(args.get(arg)) && !"mapped".equals(args.get(arg))) {
+                        exitWithException(arg + " must be eager, lazy or mapped");
+                    }
+                    break;
+                case "matrixfile":
+                    break;
+                case "search":
+                    if (!"random".equals(args.get(arg)) && !"full".equals(args.get(arg))) {
+                        exitWithException(arg + " must be random or full");
+                    }
+                    break;
+                case "seed":
+                    try {
+                        Long.parseLong(args.get(arg));
+                    } catch (NumberFormatException ex) {
+                        exitWithException(arg + " must be an integer");
+                    }
+                    break;
                 case "help":
                     printUsage();
                     break;
@@ -190,9 +392,21 @@ public class Main {
                     break;
             }
         }
-        if (!hasInput) {
+        if (!hasInput && !args.containsKey("server")) {
             printUsage();
             exitWithException("No input file provided");            
         }
+        if (args.containsKey("horizon")
+                && (args.containsKey("overlap") ? Integer.parseInt(args.get("overlap")) : 30) >= Integer.parseInt(args.get("horizon"))) {
+            exitWithException("overlap must be less than horizon");
+        }
+        //these modes compute travel times on demand and have no time limit, so the options would be ignored
+        for (String mode : new String[]{"online", "horizon", "clusters"}) {
+            for (String option : new String[]{"matrix", "matrixfile", "cache", "time-limit"}) {
+                if (args.containsKey(mode) && args.containsKey(option)) {
+                    exitWithException(option + " cannot be used with " + mode);
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,449 @@
+package ridesharing.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+import ridesharing.model.Point;
+import ridesharing.model.Route;
+import ridesharing.model.TravelTimeProvider;
+import ridesharing.model.TripRequest;
+import ridesharing.model.Vehicle;
+
+/**
+ * Best improvement local search over whole move neighbourhoods: relocating a trip to
+ * another route, swapping trips between two routes, reinserting a trip elsewhere in its
+ * own route, and exchanging route tails.  Each round the best move over all pairs of
+ * routes is applied.  The best move of each pair is kept between rounds, so after a
+ * move only the pairs involving the changed routes are evaluated again, in parallel
+ * on a fork/join pool.
+ * A move improves if it empties a route without lowering the objective, or raises the
+ * objective; emptying a route is preferred, as fewer vehicles is the first aim
+ * @author aengusmccullough
+ */
+class NeighborhoodSearch {
+
+    private static final double EPS = 1e-9;
+    private static final int BATCH = 16;        //route pairs evaluated per task
+
+    private static final int RELOCATE = 0;
+    private static final int SWAP = 1;
+    private static final int REORDER = 2;
+    private static final int TAIL_EXCHANGE = 3;
+
+    private final TravelTimeProvider matrix;
+    private final int capacity;
+    private final double alpha;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param matrix TravelTimeProvider
+     * @param capacity int vehicle capacity
+     * @param alpha double objective constant
+     * @param pool ForkJoinPool pool the neighbourhoods are evaluated on
+     */
+    NeighborhoodSearch(TravelTimeProvider matrix, int capacity, double alpha, ForkJoinPool pool) {
+        this.matrix = matrix;
+        this.capacity = capacity;
+        this.alpha = alpha;
+        this.pool = pool;
+    }
+
+    /**
+     * Apply the best improving move until there is none left, maxRounds moves have
+     * been applied or the search is stopped.  Once stopped, the routes and pairs not yet
+     * evaluated are skipped and the solution is returned as it stands
+     * @param vehicles List<Vehicle> solution to improve (modified)
+     * @param maxRounds int
+     * @param stop BooleanSupplier checked before each round and each route or pair evaluated
+     * @return List<Vehicle> improved solution, without the vehicles whose route was emptied
+     */
+    List<Vehicle> improve(List<Vehicle> vehicles, int maxRounds, BooleanSupplier stop) {
+        int n = vehicles.size();
+        RouteInfo[] info = new RouteInfo[n];
+        Move[][] best = new Move[n][n];
+        int[] rowBest = new int[n];             //column of the best move of each row, -1 if none
+        boolean[] isChanged = new boolean[n];   //reused by each evaluation
+        List<Integer> changed = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            changed.add(i);
+        }
+
+        if (stop.getAsBoolean()) {
+            return vehicles;
+        }
+        analyse(vehicles, info, changed, stop);
+        evaluate(info, best, rowBest, isChanged, changed, stop);
+        for (int round = 0; round < maxRounds && !stop.getAsBoolean(); round++) {
+            Move move = null;
+            for (int i = 0; i < n; i++) {
+                if (rowBest[i] >= 0 && (move == null || best[i][rowBest[i]].isBetterThan(move))) {
+                    move = best[i][rowBest[i]];
+                }
+            }
+            if (move == null) {
+                break;
+            }
+            changed = apply(move, vehicles, info);
+            analyse(vehicles, info, changed, stop);
+            evaluate(info, best, rowBest, isChanged, changed, stop);
+        }
+
+        List<Vehicle> result = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (vehicles.get(i) != null) {
+                result.add(vehicles.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Rebuild the trip positions, removal deltas and cached arrays of the changed routes
+     */
+    private void analyse(List<Vehicle> vehicles, RouteInfo[] info, List<Integer> changed, BooleanSupplier stop) {
+        List<Integer> live = new ArrayList<>();
+        for (int i : changed) {
+            if (vehicles.get(i) != null) {
+                live.add(i);
+            }
+        }
+        pool.invoke(new ParallelFor(0, live.size(), (int p) -> {
+            if (stop.getAsBoolean()) {
+                return;
+            }
+            int i = live.get(p);
+            info[i] = new RouteInfo(vehicles.get(i));
+        }));
+    }
+
+    /**
+     * Find the best improving move of every pair of routes involving a changed route,
+     * then bring the best move of each row up to date.  Pairs are enumerated from the
+     * changed routes, so nothing of size n * n is allocated or scanned per round
+     */
+    private void evaluate(RouteInfo[] info, Move[][] best, int[] rowBest, boolean[] isChanged, List<Integer> changed,
+            BooleanSupplier stop) {
+        int n = info.length;
+        int[] rows = new int[changed.size()];
+        for (int p = 0; p < rows.length; p++) {
+            rows[p] = changed.get(p);
+            isChanged[rows[p]] = true;
+        }
+        //pair (c, k) and, unless k also changed, (k, c)
+        pool.invoke(new ParallelFor(0, rows.length * n, (int p) -> {
+            if (stop.getAsBoolean()) {
+                return;
+            }
+            int c = rows[p / n];
+            int k = p % n;
+            best[c][k] = info[c] == null || info[k] == null ? null : bestMove(info, c, k);
+            if (!isChanged[k]) {
+                best[k][c] = info[k] == null || info[c] == null ? null : bestMove(info, k, c);
+            }
+        }));
+
+        for (int i = 0; i < n && !stop.getAsBoolean(); i++) {
+            if (isChanged[i] || (rowBest[i] >= 0 && isChanged[rowBest[i]])) {
+                rowBest[i] = -1;
+                for (int j = 0; j < n; j++) {
+                    rowBest[i] = better(best, i, j, rowBest[i]);
+                }
+            } else if (info[i] != null) {
+                for (int c : rows) {
+                    rowBest[i] = better(best, i, c, rowBest[i]);
+                }
+            }
+        }
+        for (int c : rows) {
+            isChanged[c] = false;
+        }
+    }
+
+    /**
+     * @return int column j or current, whichever holds the better move of row i; on a
+     * tie the lower column, as a row major scan would pick
+     */
+    private static int better(Move[][] best, int i, int j, int current) {
+        Move m = best[i][j];
+        if (m == null) {
+            return current;
+        }
+        if (current < 0) {
+            return j;
+        }
+        Move other = best[i][current];
+        return m.isBetterThan(other) || (!other.isBetterThan(m) && j < current) ? j : current;
+    }
+
+    /**
+     * Best improving move between route i and route j (within route i when i == j)
+     * @return Move or null if there is none
+     */
+    private Move bestMove(RouteInfo[] info, int i, int j) {
+        RouteInfo from = info[i];
+        RouteInfo to = info[j];
+        Move best = null;
+        if (i == j) {
+            //reinsert a trip elsewhere in its own route
+            for (int k = 0; k < from.trips.length; k++) {
+                int[] ins = bestInsertion(from.without[k], from.trips[k]);
+                if (ins != null) {
+                    best = better(best, new Move(REORDER, i, i, k, -1, ins, null,
+                            from.removal[k] + from.without[k].insertionDelta(ins[0], ins[1], from.trips[k], matrix, alpha), false));
+                }
+            }
+            return best;
+        }
+
+        //relocate a trip of route i into route j
+        for (int k = 0; k < from.trips.length; k++) {
+            int[] ins = bestInsertion(to.route, from.trips[k]);
+            if (ins != null) {
+                double delta = from.removal[k] + to.route.insertionDelta(ins[0], ins[1], from.trips[k], matrix, alpha);
+                best = better(best, new Move(RELOCATE, i, j, k, -1, ins, null, delta, from.trips.length == 1));
+            }
+        }
+
+        //swap a trip of route i with one of route j, each pair of routes looked at once
+        if (i < j) {
+            for (int k = 0; k < from.trips.length; k++) {
+                for (int m = 0; m < to.trips.length; m++) {
+                    int[] intoFrom = bestInsertion(from.without[k], to.trips[m]);
+                    if (intoFrom == null) {
+                        continue;
+                    }
+                    int[] intoTo = bestInsertion(to.without[m], from.trips[k]);
+                    if (intoTo == null) {
+                        continue;
+                    }
+                    double delta = from.removal[k] + to.removal[m]
+                            + from.without[k].insertionDelta(intoFrom[0], intoFrom[1], to.trips[m], matrix, alpha)
+                            + to.without[m].insertionDelta(intoTo[0], intoTo[1], from.trips[k], matrix, alpha);
+                    best = better(best, new Move(SWAP, i, j, k, m, intoTo, intoFrom, delta, false));
+                }
+            }
+        }
+
+        //exchange tails.  Cuts can only be made where the vehicle is empty, so every trip keeps
+        //the edges it travels on and the objective does not change: the only exchange that can
+        //improve is the one that leaves a route empty, which is route j following route i
+        List<Point> joined = new ArrayList<>(from.route.getSchedule());
+        joined.addAll(to.route.getSchedule());
+        if (Route.canTraverse(joined, matrix, capacity)) {
+            best = better(best, new Move(TAIL_EXCHANGE, i, j, -1, -1, null, null, 0, true));
+        }
+        return best;
+    }
+
+    /**
+     * Best feasible insertion of a trip request into a route, by change to the objective
+     * @return int[] {source index, destination index} or null if it cannot be inserted
+     */
+    private int[] bestInsertion(Route route, TripRequest tr) {
+        //positions served after the source's (destination's) latest time cannot take it
+        int srcLimit = route.servedBy(tr.getSource().getLatest(), matrix);
+        int destLimit = route.servedBy(tr.getDestination().getLatest(), matrix);
+        int[] best = null;
+        double bestDelta = Double.NEGATIVE_INFINITY;
+        for (int a = 0; a <= srcLimit; a++) {
+            for (int b = a; b <= destLimit; b++) {
+                if (route.canInsert(a, b, tr, matrix, capacity)) {
+                    double delta = route.insertionDelta(a, b, tr, matrix, alpha);
+                    if (delta > bestDelta) {
+                        bestDelta = delta;
+                        best = new int[]{a, b};
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private static Move better(Move best, Move candidate) {
+        if (!candidate.isImproving() || (best != null && !candidate.isBetterThan(best))) {
+            return best;
+        }
+        return candidate;
+    }
+
+    /**
+     * Apply a move to the vehicles
+     * @return List<Integer> the routes that changed
+     */
+    private List<Integer> apply(Move move, List<Vehicle> vehicles, RouteInfo[] info) {
+        RouteInfo from = info[move.from];
+        RouteInfo to = info[move.to];
+        Vehicle vFrom = vehicles.get(move.from);
+        Vehicle vTo = vehicles.get(move.to);
+        List<Integer> changed = new ArrayList<>();
+        changed.add(move.from);
+        switch (move.type) {
+            case RELOCATE:
+                TripRequest tr = from.trips[move.k];
+                vTo.setRoute(insert(to.route, move.intoTo, tr));
+                vTo.getServicing().put(tr.getTripId(), tr);
+                vFrom.getServicing().remove(tr.getTripId());
+                if (from.without[move.k].getSchedule().isEmpty()) {
+                    vehicles.set(move.from, null);
+                    info[move.from] = null;
+                } else {
+                    vFrom.setRoute(finish(new Route(from.without[move.k])));
+                }
+                changed.add(move.to);
+                break;
+            case SWAP:
+                TripRequest trK = from.trips[move.k];
+                TripRequest trM = to.trips[move.m];
+                vFrom.setRoute(insert(from.without[move.k], move.intoFrom, trM));
+                vTo.setRoute(insert(to.without[move.m], move.intoTo, trK));
+                vFrom.getServicing().remove(trK.getTripId());
+                vFrom.getServicing().put(trM.getTripId(), trM);
+                vTo.getServicing().remove(trM.getTripId());
+                vTo.getServicing().put(trK.getTripId(), trK);
+                changed.add(move.to);
+                break;
+            case REORDER:
+                vFrom.setRoute(insert(from.without[move.k], move.intoTo, from.trips[move.k]));
+                break;
+            default:
+                Route joined = new Route(from.route);
+                for (Point pt : to.route.getSchedule()) {
+                    joined.append(new Point(pt));
+                }
+                vFrom.setRoute(finish(joined));
+                vFrom.getServicing().putAll(vTo.getServicing());
+                vehicles.set(move.to, null);
+                info[move.to] = null;
+                changed.add(move.to);
+                break;
+        }
+        return changed;
+    }
+
+    /**
+     * Copy of a route with a trip request inserted at the given indices (checked by canInsert)
+     */
+    private Route insert(Route route, int[] at, TripRequest tr) {
+        return route.copyWithInsertion(at[0], at[1], tr, matrix, alpha);
+    }
+
+    /**
+     * Set the service times, loads and objective of a rebuilt route
+     */
+    private Route finish(Route route) {
+        Point first = route.getSchedule().get(0);
+        first.setServiceTime(first.getEarliest());
+        first.setLoad(1);
+        route.calculateObjective(matrix, alpha);
+        return route;
+    }
+
+    /**
+     * The trips of a route, what removing each would do to the objective, and the route
+     * without each.  The routes without each trip share the route's points, so nothing
+     * is copied until a move is applied.  The cached arrays of all the routes are built
+     * here, so the routes are only read while the neighbourhoods are evaluated in parallel
+     */
+    private final class RouteInfo {
+
+        private final Route route;
+        private final TripRequest[] trips;
+        private final double[] removal;     //change to the objective from removing each trip
+        private final Route[] without;      //route without each trip (views, see Route.without)
+
+        private RouteInfo(Vehicle vehicle) {
+            this.route = vehicle.getRoute();
+            List<Point> schedule = route.getSchedule();
+            List<Integer> sources = new ArrayList<>();
+            for (int i = 0; i < schedule.size(); i++) {
+                if (schedule.get(i).isSource()) {
+                    sources.add(i);
+                }
+            }
+            trips = new TripRequest[sources.size()];
+            removal = new double[sources.size()];
+            without = new Route[sources.size()];
+            route.evaluateObjective(matrix, alpha);
+            for (int k = 0; k < trips.length; k++) {
+                int src = sources.get(k);
+                int dest = src + 1;
+                while (schedule.get(dest).getTripId() != schedule.get(src).getTripId()) {
+                    dest++;
+                }
+                trips[k] = vehicle.getServicing().get(schedule.get(src).getTripId());
+                removal[k] = route.removalDelta(src, dest - 1, matrix, alpha);
+                without[k] = route.without(src, dest - 1);
+                without[k].evaluateObjective(matrix, alpha);
+            }
+        }
+    }
+
+    private static final class Move {
+
+        private final int type;
+        private final int from;         //route the move starts from
+        private final int to;           //other route (same as from for REORDER)
+        private final int k;            //trip of route from
+        private final int m;            //trip of route to (SWAP)
+        private final int[] intoTo;     //insertion indices in route to (in route from for REORDER)
+        private final int[] intoFrom;   //insertion indices in route from (SWAP)
+        private final double delta;     //change to the objective
+        private final boolean empties;  //leaves a route empty
+
+        private Move(int type, int from, int to, int k, int m, int[] intoTo, int[] intoFrom, double delta, boolean empties) {
+            this.type = type;
+            this.from = from;
+            this.to = to;
+            this.k = k;
+            this.m = m;
+            this.intoTo = intoTo;
+            this.intoFrom = intoFrom;
+            this.delta = delta;
+            this.empties = empties;
+        }
+
+        private boolean isImproving() {
+            return delta > EPS || (empties && delta > -EPS);
+        }
+
+        private boolean isBetterThan(Move other) {
+            if (empties != other.empties) {
+                return empties;
+            }
+            return delta > other.delta;
+        }
+    }
+
+    /**
+     * Runs the body for each index in [lo, hi), splitting the range across the pool
+     */
+    private static final class ParallelFor extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int lo;
+        private final int hi;
+        private final IntConsumer body;
+
+        private ParallelFor(int lo, int hi, IntConsumer body) {
+            this.lo = lo;
+            this.hi = hi;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= BATCH) {
+                for (int p = lo; p < hi; p++) {
+                    body.accept(p);
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new ParallelFor(lo, mid, body), new ParallelFor(mid, hi, body));
+        }
+    }
+}
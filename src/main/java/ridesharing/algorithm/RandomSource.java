@@ -0,0 +1,40 @@
+package ridesharing.algorithm;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Supplies the random stream used by each GRASP iteration.  A stream is only ever used
+ * by the worker running that iteration, so no generator is shared between threads
+ * @author aengusmccullough
+ */
+@FunctionalInterface
+public interface RandomSource {
+
+    static final long SEED_STRIDE = 0x9E3779B97F4A7C15L;   //spreads per-iteration seeds
+
+    /**
+     * Returns the random stream for an iteration
+     * @param iteration int iteration number
+     * @return Random random stream
+     */
+    Random forIteration(int iteration);
+
+    /**
+     * Reproducible source: the stream of each iteration is derived from the seed and the
+     * iteration number, so results do not depend on thread scheduling
+     * @param seed long
+     * @return RandomSource
+     */
+    static RandomSource seeded(long seed) {
+        return (int iteration) -> new Random(seed + iteration * SEED_STRIDE);
+    }
+
+    /**
+     * Non reproducible source backed by the calling thread's ThreadLocalRandom
+     * @return RandomSource
+     */
+    static RandomSource threadLocal() {
+        return (int iteration) -> ThreadLocalRandom.current();
+    }
+}
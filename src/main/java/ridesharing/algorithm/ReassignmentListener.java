@@ -0,0 +1,18 @@
+package ridesharing.algorithm;
+
+/**
+ * Notified by the Dispatcher of each trip request that a re-optimization moved to
+ * another vehicle.  Calls are made while the Dispatcher is locked, so they must not
+ * call back into it
+ * @author aengusmccullough
+ */
+@FunctionalInterface
+public interface ReassignmentListener {
+
+    /**
+     * @param tripId int trip request that was moved
+     * @param fromVehicleId int vehicle that was to serve it
+     * @param toVehicleId int vehicle that now serves it
+     */
+    void reassigned(int tripId, int fromVehicleId, int toVehicleId);
+}
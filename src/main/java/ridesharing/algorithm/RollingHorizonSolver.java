@@ -0,0 +1,168 @@
+package ridesharing.algorithm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import ridesharing.model.AllPairsShortestPathMatrix;
+import ridesharing.model.TravelTimeProvider;
+import ridesharing.model.TripRequest;
+import ridesharing.model.Vehicle;
+
+/**
+ * Solves a long (e.g. full day) instance as a sequence of overlapping time windows
+ * rather than as one problem.  Requests are taken in order of departure; each window
+ * of requests is solved by a Solver with a matrix of its own, then the routes serving
+ * only trips that depart in the overlap at its end are released, for their trips to be
+ * solved again with the next window so they can share with later trips.  Whole routes
+ * are kept or released so that no shared ride is split.  The vehicles of each window
+ * are carried forward by chaining the next window's routes onto them.  The matrices,
+ * and the candidate scans, only ever cover one window, so memory and run time grow
+ * with the length of the day rather than its square
+ * @author aengusmccullough
+ */
+public class RollingHorizonSolver {
+
+    private final List<TripRequest> requests;
+    private final TravelTimeProvider matrix;
+    private final int beta;
+    private final int gamma;
+    private final int capacity;
+    private final int nIterations;
+    private final int nSearchIterations;
+    private int windowLength = 120;     //minutes of departures solved together
+    private int overlap = 30;           //minutes at the end of a window whose routes may be released to the next
+    private int nThreads = 1;
+    private ExecutorService executor;
+    private long seed = System.nanoTime();
+    private boolean neighborhoodSearch;
+
+    /**
+     * Constructor, as Solver
+     *
+     * @param requests List<TripRequest> (with time windows updated)
+     * @param matrix TravelTimeProvider used between windows (e.g. LazyTravelTimeProvider
+     * without a cache, as it is given nodes of every window)
+     * @param beta int number of candidate insertion points to consider
+     * @param gamma int degree of randomness in initial trip request selection
+     * @param capacity vehicle capacity
+     * @param nIterations number of iterations for each window
+     * @param nSearchIterations number of search iterations for each window
+     */
+    public RollingHorizonSolver(List<TripRequest> requests, TravelTimeProvider matrix, int beta, int gamma, int capacity, int nIterations, int nSearchIterations) {
+        this.requests = requests;
+        this.matrix = matrix;
+        this.beta = beta;
+        this.gamma = gamma;
+        this.capacity = capacity;
+        this.nIterations = nIterations;
+        this.nSearchIterations = nSearchIterations;
+    }
+
+    /**
+     * @param windowLength int minutes of departures solved together
+     * @param overlap int minutes at the end of each window whose routes are solved again
+     * with the next window (less than windowLength)
+     */
+    public void setWindow(int windowLength, int overlap) {
+        if (overlap < 0 || overlap >= windowLength) {
+            throw new IllegalArgumentException("Overlap must be at least 0 and less than the window length");
+        }
+        this.windowLength = windowLength;
+        this.overlap = overlap;
+    }
+
+    /**
+     * @param nThreads int number of worker threads used by each window's Solver
+     */
+    public void setThreads(int nThreads) {
+        this.nThreads = nThreads;
+    }
+
+    /**
+     * @param executor ExecutorService each window's Solver runs its workers on, as Solver.setExecutor (may be null)
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param seed long seed from which each window's random streams are derived
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param neighborhoodSearch boolean as Solver.setNeighborhoodSearch
+     */
+    public void setNeighborhoodSearch(boolean neighborhoodSearch) {
+        this.neighborhoodSearch = neighborhoodSearch;
+    }
+
+    /**
+     * Run the algorithm
+     * @return List<Vehicle> resulting list of vehicles and their corresponding schedule
+     */
+    public List<Vehicle> solve() {
+        List<TripRequest> sorted = new ArrayList<>(requests);
+        sorted.sort((TripRequest o1, TripRequest o2) -> Integer.compare(o1.getSource().getEarliest(), o2.getSource().getEarliest()));
+
+        List<Vehicle> fleet = new ArrayList<>();
+        List<TripRequest> pending = sorted;     //requests not yet served by a kept route, by departure
+        int window = 0;
+        while (!pending.isEmpty()) {
+            int start = pending.get(0).getSource().getEarliest();
+            int end = 0;
+            while (end < pending.size() && pending.get(end).getSource().getEarliest() < start + windowLength) {
+                end++;
+            }
+            //routes with no trip departing before the overlap are released unless this is the last window
+            int release = end < pending.size() ? start + windowLength - overlap : Integer.MAX_VALUE;
+
+            List<TripRequest> windowRequests = new ArrayList<>(pending.subList(0, end));
+            Solver solver = new Solver(windowRequests, new AllPairsShortestPathMatrix(windowRequests), beta, gamma, capacity, nIterations, nSearchIterations);
+            solver.setThreads(nThreads);
+            solver.setExecutor(executor);
+            solver.setSeed(seed + window++);
+            solver.setNeighborhoodSearch(neighborhoodSearch);
+            Set<TripRequest> served = Collections.newSetFromMap(new IdentityHashMap<TripRequest, Boolean>());
+            for (Vehicle v : solver.solve()) {
+                //the route serving the first request is always kept, so every window makes progress
+                if (firstDeparture(v) < release) {
+                    fleet.add(v);
+                    served.addAll(v.getServicing().values());
+                }
+            }
+            List<TripRequest> remaining = new ArrayList<>();
+            for (TripRequest tr : pending) {
+                if (!served.contains(tr)) {
+                    remaining.add(tr);
+                }
+            }
+            pending = remaining;
+            RouteChainer.chain(fleet, matrix);
+        }
+
+        int idx = 0;
+        for (Vehicle v : fleet) {
+            v.setVehicleId(idx++);
+            v.getRoute().calculateObjective(matrix, Solver.ALPHA);
+        }
+        return fleet;
+    }
+
+    /**
+     * @param v Vehicle
+     * @return int departure time of the first trip the vehicle serves
+     */
+    private static int firstDeparture(Vehicle v) {
+        int first = Integer.MAX_VALUE;
+        for (TripRequest tr : v.getServicing().values()) {
+            first = Math.min(first, tr.getSource().getEarliest());
+        }
+        return first;
+    }
+}
@@ -0,0 +1,131 @@
+package ridesharing.algorithm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import ridesharing.model.Node;
+import ridesharing.model.Point;
+import ridesharing.model.Route;
+import ridesharing.model.TravelTimeProvider;
+import ridesharing.model.Vehicle;
+
+/**
+ * Reduces the number of vehicles by chaining routes: a route can follow another if it
+ * starts late enough to be reached from the other's last point even when that point
+ * is serviced at its latest time, so neither route's schedule has to change.
+ * Routes are taken in order of end time and each is given the earliest starting route
+ * it can be followed by, found by searching the routes still without a predecessor by
+ * start time.  Chains of any length are built in one pass
+ * @author aengusmccullough
+ */
+class RouteChainer {
+
+    private RouteChainer() {
+    }
+
+    /**
+     * Chain the vehicles' routes.  The list is modified in place: the route of the first
+     * vehicle of each chain is extended and the vehicles it absorbed are removed
+     * @param vehicles List<Vehicle>
+     * @param matrix TravelTimeProvider
+     * @return List<Vehicle> the same list
+     */
+    static List<Vehicle> chain(List<Vehicle> vehicles, TravelTimeProvider matrix) {
+        int n = vehicles.size();
+        if (n < 2) {
+            return vehicles;
+        }
+
+        //routes still without a predecessor, by start service time
+        TreeMap<Integer, List<Integer>> byStart = new TreeMap<>();
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            byStart.computeIfAbsent(first(vehicles.get(i)).getServiceTime(), (Integer k) -> new ArrayList<>()).add(i);
+            for (Point pt : new Point[]{first(vehicles.get(i)), last(vehicles.get(i))}) {
+                minX = Math.min(minX, pt.getxCoord());
+                minY = Math.min(minY, pt.getyCoord());
+                maxX = Math.max(maxX, pt.getxCoord());
+                maxY = Math.max(maxY, pt.getyCoord());
+            }
+        }
+        //no travel time between route ends is longer than the diagonal of their bounding box
+        Node corner = new Node();
+        corner.setxCoord(minX);
+        corner.setyCoord(minY);
+        Node opposite = new Node();
+        opposite.setxCoord(maxX);
+        opposite.setyCoord(maxY);
+        double maxTravel = corner.distanceTo(opposite) + 1;
+
+        Integer[] byEnd = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            byEnd[i] = i;
+        }
+        Arrays.sort(byEnd, (Integer a, Integer b) -> Integer.compare(last(vehicles.get(a)).getLatest(), last(vehicles.get(b)).getLatest()));
+
+        int[] next = new int[n];
+        boolean[] hasPrev = new boolean[n];
+        Arrays.fill(next, -1);
+        for (int v : byEnd) {
+            Point vLast = last(vehicles.get(v));
+            int found = -1;
+            search:
+            for (Map.Entry<Integer, List<Integer>> e : byStart.tailMap(vLast.getLatest(), true).entrySet()) {
+                for (int r : e.getValue()) {
+                    Point rFirst = first(vehicles.get(r));
+                    if (r != v && vLast.getServiceTime() < rFirst.getServiceTime()
+                            && matrix.getTravelTime(vLast, rFirst) <= rFirst.getServiceTime() - vLast.getLatest()) {
+                        found = r;
+                        break search;
+                    }
+                }
+                if (e.getKey() - vLast.getLatest() > maxTravel) {
+                    //every route from here on could follow, so the first would have been taken
+                    break;
+                }
+            }
+            if (found != -1) {
+                next[v] = found;
+                hasPrev[found] = true;
+                List<Integer> starting = byStart.get(first(vehicles.get(found)).getServiceTime());
+                starting.remove(Integer.valueOf(found));
+                if (starting.isEmpty()) {
+                    byStart.remove(first(vehicles.get(found)).getServiceTime());
+                }
+            }
+        }
+
+        List<Vehicle> result = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (hasPrev[i]) {
+                continue;
+            }
+            Vehicle head = vehicles.get(i);
+            if (next[i] != -1) {
+                Route route = head.getRoute();
+                for (int r = next[i]; r != -1; r = next[r]) {
+                    for (Point pt : vehicles.get(r).getRoute().getSchedule()) {
+                        route.append(pt);
+                    }
+                    head.getServicing().putAll(vehicles.get(r).getServicing());
+                }
+                route.update(matrix);
+            }
+            result.add(head);
+        }
+        vehicles.clear();
+        vehicles.addAll(result);
+        return vehicles;
+    }
+
+    private static Point first(Vehicle v) {
+        return v.getRoute().getSchedule().get(0);
+    }
+
+    private static Point last(Vehicle v) {
+        List<Point> schedule = v.getRoute().getSchedule();
+        return schedule.get(schedule.size() - 1);
+    }
+}
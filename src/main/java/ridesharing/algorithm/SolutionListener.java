@@ -0,0 +1,21 @@
+package ridesharing.algorithm;
+
+import java.util.List;
+import ridesharing.model.Vehicle;
+
+/**
+ * Notified by the Solver each time a GRASP iteration finds a better solution than any
+ * found so far.  Calls are made one at a time, from the worker that finished the
+ * iteration, in order of improving objective
+ * @author aengusmccullough
+ */
+@FunctionalInterface
+public interface SolutionListener {
+
+    /**
+     * @param iteration int iteration that found the solution
+     * @param objective double summed objective of the solution
+     * @param vehicles List<Vehicle> the solution (must not be modified)
+     */
+    void improved(int iteration, double objective, List<Vehicle> vehicles);
+}
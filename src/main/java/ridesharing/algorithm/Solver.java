@@ -5,20 +5,28 @@
  */
 package ridesharing.algorithm;
 
-import java.time.temporal.ChronoUnit;
-import static java.time.temporal.ChronoUnit.MINUTES;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
-import java.util.Stack;
-import ridesharing.model.AllPairsShortestPathMatrix;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import ridesharing.model.TravelTimeProvider;
 import ridesharing.model.Node;
 import ridesharing.model.Point;
 import ridesharing.model.Route;
+import ridesharing.model.SpatialIndex;
 import ridesharing.model.TripRequest;
 import ridesharing.model.Vehicle;
 
@@ -32,28 +40,36 @@ import ridesharing.model.Vehicle;
 public class Solver {
 
     List<TripRequest> requests;
-    AllPairsShortestPathMatrix matrix;
+    TravelTimeProvider matrix;
     static final double ALPHA = 0.99;
-    final Comparator<TripRequest> earliestArrivalComparator = (TripRequest o1, TripRequest o2) -> o1.getSource().getEarliest().compareTo(o2.getSource().getEarliest());
-    final Comparator<TripRequest> delayFComp = (TripRequest o1, TripRequest o2) -> (Double.compare(o1.getDelay(), o2.getDelay()));
+    final Comparator<TripRequest> earliestArrivalComparator = (TripRequest o1, TripRequest o2) -> Integer.compare(o1.getSource().getEarliest(), o2.getSource().getEarliest());
     int beta;
     int gamma;
     int capacity;
     int nIterations;
     int nSearchIterations;
+    int nThreads = 1;
+    RandomSource randomSource = RandomSource.seeded(System.nanoTime());
+    boolean neighborhoodSearch;         //full neighbourhood search instead of random swaps
+    ForkJoinPool searchPool;            //pool the neighbourhoods are evaluated on, while solving
+    long timeLimit;                     //milliseconds to solve for, instead of nIterations (0 = no limit)
+    long deadline;                      //System.nanoTime() at which the time limit runs out, while solving
+    SolutionListener listener;          //told of each improved incumbent (may be null)
+    ExecutorService executor;           //pool the iterations are run on, kept by the caller (null = one per solve)
+    SpatialIndex destinationIndex;      //destination nodes of all requests, by position in requests
 
     /**
      * Constructor
      *
      * @param requests List<TripRequest>
-     * @param matrix AllPairsShortestPathMatrix
+     * @param matrix TravelTimeProvider
      * @param beta int number of candidate insertion points to consider
      * @param gamma int degree of randomness in initial trip request selection
      * @param capacity vehicle capacity
      * @param nIterations number
      * @param nSearchIterations
      */
-    public Solver(List<TripRequest> requests, AllPairsShortestPathMatrix matrix, int beta, int gamma, int capacity, int nIterations, int nSearchIterations) {
+    public Solver(List<TripRequest> requests, TravelTimeProvider matrix, int beta, int gamma, int capacity, int nIterations, int nSearchIterations) {
         this.requests = requests;
         this.matrix = matrix;
         requests.sort(earliestArrivalComparator);
@@ -62,54 +78,203 @@ public class Solver {
         this.capacity = capacity;
         this.nIterations = nIterations;
         this.nSearchIterations = nSearchIterations;
+        List<Node> destinations = new ArrayList<>();
+        for (TripRequest tr : requests) {
+            destinations.add(tr.getDestination());
+        }
+        this.destinationIndex = new SpatialIndex(destinations);
+    }
+
+    /**
+     * @param nThreads int number of worker threads used to run GRASP iterations (1 = sequential)
+     */
+    public void setThreads(int nThreads) {
+        this.nThreads = nThreads;
+    }
+
+    /**
+     * @param seed long seed from which the random stream of each iteration is derived
+     */
+    public void setSeed(long seed) {
+        this.randomSource = RandomSource.seeded(seed);
+    }
+
+    /**
+     * @param randomSource RandomSource supplying the random stream of each iteration
+     */
+    public void setRandomSource(RandomSource randomSource) {
+        this.randomSource = randomSource;
+    }
+
+    /**
+     * @param neighborhoodSearch boolean improve each initial solution with best improvement moves
+     * over whole neighbourhoods (nSearchIterations is then the most moves applied) rather than
+     * with random swaps
+     */
+    public void setNeighborhoodSearch(boolean neighborhoodSearch) {
+        this.neighborhoodSearch = neighborhoodSearch;
+    }
+
+    /**
+     * @param timeLimit long milliseconds to solve for: iterations are run until the time is up,
+     * however many that is, instead of nIterations (0 = no limit)
+     */
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * @param listener SolutionListener told of each improved incumbent while solving (may be null)
+     */
+    public void setSolutionListener(SolutionListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param executor ExecutorService the <code>nThreads</code> iteration workers are run on,
+     * left running after the solve so it can be shared across solves (null = a pool of
+     * their own is created and shut down by each solve)
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
     }
 
     /**
-     * Run the algorithm
+     * Run the algorithm.  Each GRASP iteration builds its own initial solution and
+     * improves it with local search, using its own random stream from the RandomSource.
+     * Iterations are run on <code>nThreads</code> workers; with a seeded source the
+     * best solution is the same whether they are run sequentially or in parallel.
+     * With neighbourhood search, the neighbourhoods are evaluated on a fork/join pool
+     * of the same size, shared by the iterations.
+     * With a time limit the best solution found when it runs out is returned.  The first
+     * iteration is always completed, and the limit is checked between search steps and
+     * while neighbourhoods are evaluated, so it can be overrun by up to one construction
      * @return List<Vehicle> resulting list of vehicles and their correspondig schedule
      */
     public List<Vehicle> solve() {
-        //compute the initial solution
-        List<Vehicle> result = calcInitialSolution();
-        //calculate the objective for initial solution
-        double objective = Solver.sumObjectives(result);
-
-        int i = 0;
-        while (i++ < nIterations) {
-            List<Vehicle> iter = calcInitialSolution();
-            if (Solver.sumObjectives(iter) > objective) {
-                result = iter;
-                objective = Solver.sumObjectives(iter);
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeLimit);
+        if (neighborhoodSearch) {
+            searchPool = new ForkJoinPool(Math.max(1, nThreads));
+        }
+        try {
+            return solveIterations();
+        } finally {
+            if (searchPool != null) {
+                searchPool.shutdownNow();
+                searchPool = null;
             }
-            int j = 0;
-            while (j++ < nSearchIterations) {
-                List<Vehicle> improved = localSearch(result);
-                if (Solver.sumObjectives(result) > objective) {
-                    objective = Solver.sumObjectives(iter);
-                    result = improved;
+        }
+    }
+
+    private List<Vehicle> solveIterations() {
+        final AtomicReference<Incumbent> best = new AtomicReference<>();
+        if (nThreads <= 1) {
+            for (int i = 0; hasIteration(i); i++) {
+                offer(best, runIteration(i));
+            }
+            return best.get().vehicles;
+        }
+
+        ExecutorService pool = executor != null ? executor : Executors.newFixedThreadPool(nThreads);
+        try {
+            //each worker takes the next iteration number until there are none left
+            final AtomicInteger next = new AtomicInteger();
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < nThreads; t++) {
+                tasks.add(() -> {
+                    for (int i = next.getAndIncrement(); hasIteration(i); i = next.getAndIncrement()) {
+                        offer(best, runIteration(i));
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while solving", ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Solver iteration failed", ex.getCause());
+        } finally {
+            if (pool != executor) {
+                pool.shutdownNow();
+            }
+        }
+        return best.get().vehicles;
+    }
+
+    /**
+     * @param iteration int
+     * @return boolean whether the iteration is to be run
+     */
+    private boolean hasIteration(int iteration) {
+        return timeLimit > 0 ? iteration == 0 || !expired() : iteration < nIterations;
+    }
+
+    /**
+     * @return boolean whether the time limit (if any) has run out
+     */
+    private boolean expired() {
+        return timeLimit > 0 && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Keep the solution if it is the best so far, telling the listener
+     * @param best AtomicReference<Incumbent> best solution so far
+     * @param candidate Incumbent solution found by an iteration
+     */
+    private void offer(AtomicReference<Incumbent> best, Incumbent candidate) {
+        //the listener is called under the same lock so improvements are reported in order
+        synchronized (best) {
+            if (Incumbent.better(best.get(), candidate) == candidate) {
+                best.set(candidate);
+                if (listener != null) {
+                    listener.improved(candidate.iteration, candidate.objective, candidate.vehicles);
                 }
             }
         }
-        return result;
+    }
+
+    /**
+     * Run a single GRASP iteration: randomized construction followed by local search
+     * @param iteration int iteration number, used to derive the random stream
+     * @return Incumbent the solution found by this iteration
+     */
+    private Incumbent runIteration(int iteration) {
+        Random rnd = randomSource.forIteration(iteration);
+        List<Vehicle> solution = calcInitialSolution(rnd);
+        if (searchPool != null) {
+            NeighborhoodSearch search = new NeighborhoodSearch(matrix, capacity, ALPHA, searchPool);
+            solution = joinVehicleRoutes(search.improve(solution, nSearchIterations, this::expired));
+        } else {
+            int j = 0;
+            while (j++ < nSearchIterations && !expired()) {
+                solution = localSearch(solution, rnd);
+            }
+        }
+        return new Incumbent(iteration, Solver.sumObjectives(solution), solution);
     }
 
     /**
      * Calculate the initial solution. Note this function will return different results as it
      * is randomized
+     * @param rnd Random random stream for this iteration
      * @return List<Vehicle> resulting list of vehicles with corresponding itinerary
      */
-    protected List<Vehicle> calcInitialSolution() {
+    protected List<Vehicle> calcInitialSolution(Random rnd) {
         // initialization
         List<Vehicle> result = new ArrayList<>();
-        Stack<TripRequest> unserved = new Stack();
-        Stack<TripRequest> cantservice = new Stack();
-        Collections.sort(requests, earliestArrivalComparator);
-        Collections.reverse(requests);
-        unserved.addAll(requests);
+        //requests are referred to by their position in requests, which is sorted by earliest
+        Worklist unserved = new Worklist(requests.size());
+        Worklist cantservice = new Worklist(requests.size());
+        for (int i = 1; i < requests.size(); i++) {
+            unserved.add(i);
+        }
 
         int vehicleIdx = 0;
         Vehicle vehicle = new Vehicle(vehicleIdx, matrix, capacity);
-        TripRequest tr = unserved.pop();
+        TripRequest tr = requests.get(0);
         vehicle.getServicing().put(tr.getTripId(), tr);
 
         Point src = new Point(tr.getSource());
@@ -123,41 +288,26 @@ public class Solver {
         vehicle.getRoute().append(dest);
 
         result.add(vehicle);
+        deferUnreachable(unserved, cantservice, vehicle.getRoute());
+        //greedy function of each unserved request, kept up to date as the route grows
+        DelayQueue delays = new DelayQueue(requests, unserved, vehicle.getRoute());
+        unserved.clear();
 
         try {                 
-            while (!unserved.isEmpty()) {
-
-                //compute the greedy function for each trip request
-                for (TripRequest us : unserved) {
-                    Solver.greedyFunction(us, result.get(vehicleIdx).getRoute());
-                }
-                //sort by delay time
-                unserved.sort(delayFComp);
-
-                //sample from the top gamma % of results
-                double topX = (unserved.size() / 100.0) * gamma;
-                double v = Math.random() * topX;
-                int random = (int) Math.ceil(v);
-                TripRequest curr = unserved.get(random == 0 ? 0 : random - 1);
-
-                //attempt to insert into current vehicle's schedule
-                if (Solver.attemptInitialInsertion(matrix, vehicle.getRoute(), curr, ALPHA, beta, capacity)) {
-                    vehicle.getServicing().put(curr.getTripId(), curr);
-                    unserved.remove(curr);
-                } else {
-                    cantservice.push(curr);
-                    unserved.remove(curr);
-                }
-
-                if (unserved.isEmpty()) {
+            //the first vehicle may already have deferred every other request
+            while (!delays.isEmpty() || !cantservice.isEmpty()) {
+                while (delays.isEmpty()) {
                     if (cantservice.isEmpty()) {
                         return result;
                     }
-                    unserved.addAll(cantservice);
-                    cantservice.clear();
+                    //refill by swapping the lists, unserved is empty at this point
+                    Worklist swap = unserved;
+                    unserved = cantservice;
+                    cantservice = swap;
 
+                    //seed each new vehicle with the earliest remaining request, as for the first
                     vehicle = new Vehicle(++vehicleIdx, matrix, capacity);
-                    tr = unserved.pop();
+                    tr = requests.get(unserved.removeAt(unserved.indexOfMin()));
                     vehicle.getServicing().put(tr.getTripId(), tr);
                     src = new Point(tr.getSource());
                     src.setLoad(1);
@@ -170,7 +320,25 @@ public class Solver {
                     vehicle.getRoute().append(dest);
 
                     result.add(vehicle);
+                    deferUnreachable(unserved, cantservice, vehicle.getRoute());
+                    delays = new DelayQueue(requests, unserved, vehicle.getRoute());
+                    unserved.clear();
+                }
+
+                //sample from the top gamma % of results
+                double topX = (delays.size() / 100.0) * gamma;
+                double v = rnd.nextDouble() * topX;
+                int random = (int) Math.ceil(v);
+                int next = delays.remove(random == 0 ? 0 : random - 1);
+                TripRequest curr = requests.get(next);
+
+                //attempt to insert into current vehicle's schedule
+                if (Solver.attemptInitialInsertion(matrix, vehicle.getRoute(), curr, ALPHA, beta, capacity, rnd)) {
+                    vehicle.getServicing().put(curr.getTripId(), curr);
+                } else {
+                    cantservice.add(next);
                 }
+                delays.update(vehicle.getRoute());
             }
         } finally {            
             result = joinVehicleRoutes(result);
@@ -184,9 +352,10 @@ public class Solver {
      * request from one to the other.  All feasible candidate insertion points are
      * considered and the one with the best improvement in objective is chosen
      * @param vehicles List<Vehicle>
+     * @param rnd Random random stream for this iteration
      * @return  List<Vehicle>
      */
-    protected List<Vehicle> localSearch(List<Vehicle> vehicles) {
+    protected List<Vehicle> localSearch(List<Vehicle> vehicles, Random rnd) {
 
         //randomly select two vehicles from the list
         int nVehicles = vehicles.size();
@@ -201,27 +370,23 @@ public class Solver {
             nVehicles--;
             int ax = 0, bx = 0;
             do {
-                ax = (int) Math.ceil(nVehicles * Math.random());
-                bx = (int) Math.ceil(nVehicles * Math.random());
-            } while (ax != bx);
+                ax = (int) Math.ceil(nVehicles * rnd.nextDouble());
+                bx = (int) Math.ceil(nVehicles * rnd.nextDouble());
+            } while (ax == bx);
             a = vehicles.get(ax);
             b = vehicles.get(bx);
         }
 
         //randomly select  a trip request from each vehicle
-        int randomA = (int) Math.ceil(Math.random() * a.getRoute().getSchedule().size() - 1);
-        int randomB = (int) Math.ceil(Math.random() * b.getRoute().getSchedule().size() - 1);
+        int randomA = (int) Math.ceil(rnd.nextDouble() * a.getRoute().getSchedule().size() - 1);
+        int randomB = (int) Math.ceil(rnd.nextDouble() * b.getRoute().getSchedule().size() - 1);
 
         int tripRequestA = a.getRoute().getSchedule().get(randomA).getTripId();
         int tripRequestB = b.getRoute().getSchedule().get(randomB).getTripId();
 
-        //clone routes before modifying
-        Route routeA = new Route(a.getRoute());
-        Route routeB = new Route(b.getRoute());
-
-        //remove trip requests
-        Solver.removeTripRequest(tripRequestA, routeA);
-        Solver.removeTripRequest(tripRequestB, routeB);
+        //routes without the trip requests, sharing the original points until an insertion is copied
+        Route routeA = Solver.withoutTripRequest(tripRequestA, a.getRoute());
+        Route routeB = Solver.withoutTripRequest(tripRequestB, b.getRoute());
 
         //attempt insertion of tripRequestA into routeB
         TripRequest trA = this.findTripRequest(tripRequestA);
@@ -249,29 +414,54 @@ public class Solver {
     
     
 
+    /**
+     * Moves the requests that can never be inserted into a new vehicle's route straight
+     * to cantservice.  Insertion never places a point after the last point of the route,
+     * so a request whose destination cannot reach that point by its latest time is
+     * hopeless for this vehicle
+     * @param unserved Worklist positions of the unserved requests
+     * @param cantservice Worklist positions of the requests deferred to later vehicles
+     * @param route Route new vehicle's route
+     */
+    private void deferUnreachable(Worklist unserved, Worklist cantservice, Route route) {
+        Point last = route.getSchedule().get(route.getSchedule().size() - 1);
+        BitSet reachable = destinationIndex.canReach(last, last.getLatest());
+        for (int i = unserved.size() - 1; i >= 0; i--) {
+            if (!reachable.get(unserved.get(i))) {
+                cantservice.add(unserved.removeAt(i));
+            }
+        }
+    }
+
     /**
      * Attempt to insert a trip request into a route (initial)
      * considers only beta candidate insertion points
-     * @param matrix  AllPairsShortestPathMatrix
+     * @param matrix  TravelTimeProvider
      * @param route Route
      * @param tr TripRequest
      * @param alpha constant
      * @param beta parameter (how many insertion points to try)
      * @param capacity vehicle capacity
+     * @param rnd Random random stream used to select the insertion point
      * @return boolean success/ failure
      */
-    public static boolean attemptInitialInsertion(AllPairsShortestPathMatrix matrix, Route route, TripRequest tr, double alpha, int beta, int capacity) {
+    public static boolean attemptInitialInsertion(TravelTimeProvider matrix, Route route, TripRequest tr, double alpha, int beta, int capacity, Random rnd) {
 
         Set<Solver.PtPair> feasiblePairs;
 
+        //positions served after the source's (destination's) latest time cannot take it
+        int n = route.getSchedule().size();
+        int srcLimit = Math.min(n, route.servedBy(tr.getSource().getLatest(), matrix) + 1);
+        int destLimit = Math.min(n, route.servedBy(tr.getDestination().getLatest(), matrix) + 1);
+
         //1. source points
-        int[] s = Solver.getCandidateInsertionPoints(route, tr, beta, true);
-        List<Solver.PtPair> srcPairs = getSrcPtPairs(route.getSchedule().size(), s);
+        int[] s = Solver.getCandidateInsertionPoints(route, tr, beta, true, srcLimit);
+        List<Solver.PtPair> srcPairs = getSrcPtPairs(destLimit, s);
         feasiblePairs = getFeasiblePairs(matrix, route, srcPairs, tr, alpha, capacity);
 
         //2. dest points
-        s = Solver.getCandidateInsertionPoints(route, tr, beta, false);
-        List<Solver.PtPair> destPairs = getDestPtPairs(route.getSchedule().size(), s);
+        s = Solver.getCandidateInsertionPoints(route, tr, beta, false, destLimit);
+        List<Solver.PtPair> destPairs = getDestPtPairs(srcLimit, s);
         feasiblePairs.addAll(getFeasiblePairs(matrix, route, destPairs, tr, alpha, capacity));
 
         //randomly select a pair with probability proportional to value of objective function
@@ -279,7 +469,7 @@ public class Solver {
         fpairs.addAll(feasiblePairs);
         Collections.sort(fpairs);
         double topX = (fpairs.size() / 100.0) * beta;
-        int random = (int) Math.ceil(topX * Math.random());
+        int random = (int) Math.ceil(topX * rnd.nextDouble());
         if (!feasiblePairs.isEmpty()) {
             Solver.PtPair pair = fpairs.get(random == 0 ? 0 : random - 1);
 
@@ -306,40 +496,41 @@ public class Solver {
      * @param capacity
      * @return
      */
-    public static Route attemptSearchInsertion(AllPairsShortestPathMatrix matrix, Route route, TripRequest tr, double alpha, int capacity) {
+    public static Route attemptSearchInsertion(TravelTimeProvider matrix, Route route, TripRequest tr, double alpha, int capacity) {
 
         Set<Solver.PtPair> feasiblePairs;
 
+        //positions served after the source's (destination's) latest time cannot take it
+        int n = route.getSchedule().size();
+        int srcLimit = Math.min(n, route.servedBy(tr.getSource().getLatest(), matrix) + 1);
+        int destLimit = Math.min(n, route.servedBy(tr.getDestination().getLatest(), matrix) + 1);
+
         //1. source points 
-        int[] s = Solver.getCandidateInsertionPoints(route, tr, route.getSchedule().size(), true);
-        List<Solver.PtPair> srcPairs = getSrcPtPairs(route.getSchedule().size(), s);
+        int[] s = Solver.getCandidateInsertionPoints(route, tr, n, true, srcLimit);
+        List<Solver.PtPair> srcPairs = getSrcPtPairs(destLimit, s);
         feasiblePairs = getFeasiblePairs(matrix, route, srcPairs, tr, alpha, capacity);
 
         //2. dest points
-        s = Solver.getCandidateInsertionPoints(route, tr, route.getSchedule().size(), false);
-        List<Solver.PtPair> destPairs = getDestPtPairs(route.getSchedule().size(), s);
+        s = Solver.getCandidateInsertionPoints(route, tr, n, false, destLimit);
+        List<Solver.PtPair> destPairs = getDestPtPairs(srcLimit, s);
         feasiblePairs.addAll(getFeasiblePairs(matrix, route, destPairs, tr, alpha, capacity));
 
         
-        // consider all feasible insertion points
+        // consider all feasible insertion points, scoring each by the change it makes to the objective
         double bestObjective = route.getObjective();
-        Route bestRoute = null;
-        double objective = 0;
+        double current = route.evaluateObjective(matrix, alpha);
+        PtPair best = null;
         for (PtPair pair : feasiblePairs) {
-            Route clone = new Route(route);
-            if (clone.insert(pair.getA(), pair.getB(), tr)) {
-                objective = clone.calculateObjective(matrix, alpha);
-                if (objective > bestObjective) {
-                    bestObjective = objective;
-                    bestRoute = clone;
-                }
+            double objective = current + route.insertionDelta(pair.getA(), pair.getB(), tr, matrix, alpha);
+            if (objective > bestObjective) {
+                bestObjective = objective;
+                best = pair;
             }
         }
-        if (bestRoute != null) {
-            bestRoute.update(matrix);
+        if (best == null) {
+            return null;
         }
-
-        return bestRoute;
+        return route.copyWithInsertion(best.getA(), best.getB(), tr, matrix, alpha);
     }
 
     
@@ -351,49 +542,11 @@ public class Solver {
      * @return List<Vehicle> reduced list
      */
     private List<Vehicle> joinVehicleRoutes(List<Vehicle> input) {
-        List<Integer> vehiclesforRemoval = new ArrayList<>();
-        for (Vehicle v : input) {
-            if (vehiclesforRemoval.contains(v.getVehicleId())) {
-                continue;
-            }
-            Point vLast = v.getRoute().getSchedule().get(v.getRoute().getSchedule().size() - 1);
-            Point vFirst = v.getRoute().getSchedule().get(0);
-            for (int i = 0; i < input.size(); i++) {
-                if (v.getVehicleId() == input.get(i).getVehicleId()) {
-                    continue;
-                }
-                if (vehiclesforRemoval.contains(input.get(i).getVehicleId())) {
-                    continue;
-                }
-                Point rLast = input.get(i).getRoute().getSchedule().get(input.get(i).getRoute().getSchedule().size() - 1);
-                Point rFirst = input.get(i).getRoute().getSchedule().get(0);
-
-                if (vLast.getServiceTime().isBefore(rFirst.getServiceTime())
-                        && (matrix.getTravelTime(vLast, rFirst) <= (vLast.getLatest().until(rFirst.getServiceTime(), ChronoUnit.MINUTES)))) {
-                    v.getRoute().appendRoute(input.get(i).getRoute(), matrix);
-                    v.getServicing().putAll(input.get(i).getServicing());
-                    vehiclesforRemoval.add(input.get(i).getVehicleId());
-                    break;
-                }
-                if (rLast.getServiceTime().isBefore(vFirst.getServiceTime())
-                        && (matrix.getTravelTime(rLast, vFirst) <= rLast.getLatest().until(vFirst.getServiceTime(), ChronoUnit.MINUTES))) {
-                    input.get(i).getRoute().appendRoute(v.getRoute(), matrix);
-                    input.get(i).getServicing().putAll(v.getServicing());
-                    vehiclesforRemoval.add(v.getVehicleId());
-                    break;
-                }
-            }
-        }
-
+        RouteChainer.chain(input, matrix);
         int idx = 0;
-        for (Iterator<Vehicle> iter = input.listIterator(); iter.hasNext();) {
-            Vehicle a = iter.next();
-            if (vehiclesforRemoval.contains(a.getVehicleId())) {
-                iter.remove();
-            } else {
-                a.setVehicleId(idx++);
-                a.getRoute().calculateObjective(matrix, ALPHA);
-            }
+        for (Vehicle a : input) {
+            a.setVehicleId(idx++);
+            a.getRoute().calculateObjective(matrix, ALPHA);
         }
         return input;
     }
@@ -421,12 +574,22 @@ public class Solver {
      * @param beta int how many candidates to return (higher=more optimal
      * solution, lower=quicker)
      * @param source boolean (source=true,destination =false)
+     * @param limit int only the points before this index can take the trip end in time
+     * (see Route.servedBy), so the rest are not looked at
      * @return int[] candidate insertion points
      */
-    private static int[] getCandidateInsertionPoints(Route route, TripRequest tr, int beta, boolean source) {
-        double[][] rDelay = new double[route.getSchedule().size()][2];  //[0] -> index in schedule [1]-> rDelay
+    private static int[] getCandidateInsertionPoints(Route route, TripRequest tr, int beta, boolean source, int limit) {
+        if (beta >= limit) {
+            //every point that can be reached is a candidate (as in the search), so there is nothing to rank
+            int[] s = new int[limit];
+            for (int j = 0; j < limit; j++) {
+                s[j] = j;
+            }
+            return s;
+        }
+        double[][] rDelay = new double[limit][2];  //[0] -> index in schedule [1]-> rDelay
         int i = -1;
-        for (Point pt : route.getSchedule()) {
+        for (Point pt : route.getSchedule().subList(0, limit)) {
             rDelay[++i][0] = i;
             if (source) {
                 rDelay[i][1] = Solver.calcSourcePointDelay(pt, tr.getSource());
@@ -434,48 +597,21 @@ public class Solver {
                 rDelay[i][1] = Solver.calcDestPointDelay(pt, tr.getDestination());
             }
         }
-        //sort on minimum delay
-        java.util.Arrays.sort(rDelay, (double[] a, double[] b1) -> Double.compare(a[0], b1[0]));
+        //sort on minimum delay (earlier points first among equal delays)
+        java.util.Arrays.sort(rDelay, (double[] a, double[] b1) -> a[1] != b1[1] ? Double.compare(a[1], b1[1]) : Double.compare(a[0], b1[0]));
 
-        //s is a subset of r, containing (min of beta, schedule.size) candidate source insertion points
-        int size = Math.min(route.getSchedule().size(), beta);
-        int[] s = new int[size];
-        for (int j = 0; j < size; j++) {
+        //s is a subset of r, containing the beta candidate insertion points of least delay
+        int[] s = new int[beta];
+        for (int j = 0; j < beta; j++) {
             s[j] = (int) rDelay[j][0];
         }
         return s;
     }
 
+    
     /**
-     * Greedy function for assessing the viability of inserting a trip
-     * request into the route
-     *
-     * @param request
-     * @param route
-     * @return
-     */
-    private static double greedyFunction(TripRequest request, Route route) {
-
-        double minSrc = Double.POSITIVE_INFINITY;
-        double minDest = Double.POSITIVE_INFINITY;
-        double src;
-        double dest;
-        for (Point schedule : route.getSchedule()) {
-            src = Solver.calcSourcePointDelay(schedule, request.getSource());
-            dest = Solver.calcDestPointDelay(schedule, request.getDestination());
-            if (src < minSrc) {
-                minSrc = src;
-            }
-            if (dest < minDest) {
-                minDest = dest;
-            }
-        }
-        request.setDelay(minSrc + minDest);
-        return minSrc + minDest;
-    }
-
-    /**
-     * Checks the feasibility of inserting trip request at each set of locations
+     * Checks the feasibility of inserting trip request at each set of locations.
+     * Each pair is checked in constant time against the route's cached arrays
      *
      * @param pairs List<PtPair> list of indexes to insert source and
      * destination points
@@ -483,15 +619,11 @@ public class Solver {
      * @param alpha int alpha param
      * @return List feasible pairs
      */
-    private static Set<Solver.PtPair> getFeasiblePairs(AllPairsShortestPathMatrix matrix, Route route, List<Solver.PtPair> pairs, TripRequest tr, double alpha, int capacity) {
+    private static Set<Solver.PtPair> getFeasiblePairs(TravelTimeProvider matrix, Route route, List<Solver.PtPair> pairs, TripRequest tr, double alpha, int capacity) {
         Set<Solver.PtPair> feasiblePairs = new HashSet<>();
         for (Solver.PtPair sp : pairs) {
-            List<Point> tempSchedule = new ArrayList<>();
-            tempSchedule.addAll(route.getSchedule());
-            tempSchedule.add(sp.getB(), new Point(tr.getDestination()));
-            tempSchedule.add(sp.getA(), new Point(tr.getSource()));
-            if (Route.canTraverse(tempSchedule, matrix, capacity)) {
-                sp.calculateObjectiveFunction(tempSchedule, alpha);
+            if (route.canInsert(sp.getA(), sp.getB(), tr, matrix, capacity)) {
+                sp.setObjective(route.insertionObjective(sp.getA(), sp.getB(), tr, alpha));
                 feasiblePairs.add(sp);
             }
         }
@@ -506,7 +638,7 @@ public class Solver {
      * @return
      */
     public static double calcSourcePointDelay(Point pt, Node ptI) {
-        double delay = Math.max(ptI.distanceTo(pt), pt.getServiceTime().until(ptI.getEarliest(), MINUTES));
+        double delay = Math.max(ptI.distanceTo(pt), ptI.getEarliest() - pt.getServiceTime());
         return delay;
     }
 
@@ -517,7 +649,7 @@ public class Solver {
      * @return 
      */
     public static double calcDestPointDelay(Point pt, Node ptI) {
-        if (pt.getServiceTime().plusMinutes((long) Math.ceil(ptI.distanceTo(pt))).isBefore(ptI.getLatest())) {
+        if (pt.getServiceTime() + (int) Math.ceil(ptI.distanceTo(pt)) < ptI.getLatest()) {
             return ptI.distanceTo(pt);
         } else {
             return Double.POSITIVE_INFINITY;
@@ -582,11 +714,12 @@ public class Solver {
     }
 
     /**
-     * Utility method to remove a trip request from a route
+     * Utility method to view a route without a trip request (see Route.without)
      * @param tripId
      * @param route 
+     * @return Route the route without the trip request, or the route itself if it does not serve it
      */
-    private static void removeTripRequest(int tripId, Route route) {
+    private static Route withoutTripRequest(int tripId, Route route) {
         int src = -1, dest = -1;
         for (int i = 0; i < route.getSchedule().size(); i++) {
             if (tripId == route.getSchedule().get(i).getTripId()) {
@@ -601,11 +734,46 @@ public class Solver {
             }
         }
         if (src != -1 && dest != -1) {
-            route.remove(src, dest);
+            return route.without(src, dest - 1);
         }
+        return route;
     }
     
 
+    /**
+     * Static class used to store the solution found by an iteration
+     */
+    private static class Incumbent {
+
+        private final int iteration;
+        private final double objective;
+        private final List<Vehicle> vehicles;
+
+        Incumbent(int iteration, double objective, List<Vehicle> vehicles) {
+            this.iteration = iteration;
+            this.objective = objective;
+            this.vehicles = vehicles;
+        }
+
+        /**
+         * Reduction used to keep the best solution. Ties go to the lowest iteration so
+         * the result does not depend on the order in which iterations complete
+         * @param a Incumbent (may be null)
+         * @param b Incumbent
+         * @return Incumbent the better of the two
+         */
+        static Incumbent better(Incumbent a, Incumbent b) {
+            if (a == null) {
+                return b;
+            }
+            int cmp = Double.compare(a.objective, b.objective);
+            if (cmp > 0 || (cmp == 0 && a.iteration < b.iteration)) {
+                return a;
+            }
+            return b;
+        }
+    }
+
     /**
      * Static class used to store insertion points and objective associated with
      */
@@ -679,34 +847,6 @@ public class Solver {
             this.objective = objective;
         }
 
-        /**
-         * Determine objective of inserting this pair into schedule represented by routes
-         * @param pts
-         * @param alpha
-         * @return 
-         */
-        public double calculateObjectiveFunction(List<Point> pts, double alpha) {
-            int load = 0;
-            //update load (n passengers) at each point
-            for (Point pt : pts) {
-                if (pt.isSource()) {
-                    pt.setLoad(++load);
-                }
-                if (!pt.isSource()) {
-                    pt.setLoad(--load);
-                }
-            }
-            //
-            double cost = 0;
-            for (int j = this.getA(); j < this.getB() - 1; j++) {
-                cost += (pts.get(j).distanceTo(pts.get(j + 1)) / (pts.get(j).getLoad()));
-            }
-
-            double obj = 1 - alpha * (cost / pts.get(this.getA()).distanceTo(pts.get(this.getB())));
-            this.setObjective(obj);
-            return obj;
-        }
-
         @Override
         public int compareTo(PtPair o) {
             return Double.compare(this.objective, o.objective);
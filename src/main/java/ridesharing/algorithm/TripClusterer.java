@@ -0,0 +1,108 @@
+package ridesharing.algorithm;
+
+import java.util.List;
+import java.util.Random;
+import ridesharing.model.TripRequest;
+
+/**
+ * k-means clustering of trip requests by their source and destination coordinates
+ * together, so trips grouped together start near each other and end near each other.
+ * Initial centres are chosen by k-means++
+ * @author aengusmccullough
+ */
+class TripClusterer {
+
+    private static final int MAX_ROUNDS = 20;
+
+    private TripClusterer() {
+    }
+
+    /**
+     * @param requests List<TripRequest>
+     * @param k int number of clusters
+     * @param rnd Random used to choose the initial centres
+     * @return int[] cluster of each request, by position in requests
+     */
+    static int[] cluster(List<TripRequest> requests, int k, Random rnd) {
+        int n = requests.size();
+        double[][] points = new double[n][];
+        for (int i = 0; i < n; i++) {
+            TripRequest tr = requests.get(i);
+            points[i] = new double[]{tr.getSource().getxCoord(), tr.getSource().getyCoord(),
+                tr.getDestination().getxCoord(), tr.getDestination().getyCoord()};
+        }
+        k = Math.max(1, Math.min(k, n));
+
+        //k-means++: each further centre is chosen with probability proportional to its squared distance
+        double[][] centres = new double[k][];
+        double[] nearest = new double[n];
+        centres[0] = points[rnd.nextInt(n)].clone();
+        for (int i = 0; i < n; i++) {
+            nearest[i] = squaredDistance(points[i], centres[0]);
+        }
+        for (int c = 1; c < k; c++) {
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                total += nearest[i];
+            }
+            double r = rnd.nextDouble() * total;
+            int chosen = n - 1;
+            for (int i = 0; i < n; i++) {
+                r -= nearest[i];
+                if (r < 0) {
+                    chosen = i;
+                    break;
+                }
+            }
+            centres[c] = points[chosen].clone();
+            for (int i = 0; i < n; i++) {
+                nearest[i] = Math.min(nearest[i], squaredDistance(points[i], centres[c]));
+            }
+        }
+
+        int[] assignment = new int[n];
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            boolean changed = false;
+            for (int i = 0; i < n; i++) {
+                int best = 0;
+                for (int c = 1; c < k; c++) {
+                    if (squaredDistance(points[i], centres[c]) < squaredDistance(points[i], centres[best])) {
+                        best = c;
+                    }
+                }
+                if (best != assignment[i]) {
+                    assignment[i] = best;
+                    changed = true;
+                }
+            }
+            if (!changed && round > 0) {
+                break;
+            }
+            //move each centre to the mean of its trips (a centre with none stays put)
+            double[][] sums = new double[k][4];
+            int[] counts = new int[k];
+            for (int i = 0; i < n; i++) {
+                counts[assignment[i]]++;
+                for (int d = 0; d < 4; d++) {
+                    sums[assignment[i]][d] += points[i][d];
+                }
+            }
+            for (int c = 0; c < k; c++) {
+                if (counts[c] > 0) {
+                    for (int d = 0; d < 4; d++) {
+                        centres[c][d] = sums[c][d] / counts[c];
+                    }
+                }
+            }
+        }
+        return assignment;
+    }
+
+    private static double squaredDistance(double[] a, double[] b) {
+        double sum = 0;
+        for (int d = 0; d < a.length; d++) {
+            sum += (a[d] - b[d]) * (a[d] - b[d]);
+        }
+        return sum;
+    }
+}
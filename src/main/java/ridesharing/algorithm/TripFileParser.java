@@ -0,0 +1,350 @@
+package ridesharing.algorithm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import ridesharing.model.TripRequest;
+
+/**
+ * Parses the input file format straight from the bytes of the memory mapped file.
+ * Fields are found by scanning for tabs and read into primitives where they lie, so
+ * the only String made for a line is its requester.  Lines are accepted and rejected
+ * as by InputParser, with the same messages and line numbers: as BufferedReader.readLine,
+ * a line ends at a newline, a carriage return or both.
+ * A large file can be parsed in parallel: it is split into chunks at line boundaries,
+ * the lines of each chunk are counted so every chunk knows the number of its first
+ * line, then the chunks are parsed on a fork/join pool and their trip requests joined
+ * in order
+ * @author aengusmccullough
+ */
+class TripFileParser {
+
+    private static final Charset CHARSET = Charset.defaultCharset();   //as FileReader
+    private static final long INVALID = Long.MIN_VALUE;
+    private static final int FIELDS = 8;
+    private static final int MIN_CHUNK = 1 << 20;       //bytes; smaller files are parsed on one thread
+    private static final int CHUNKS_PER_THREAD = 4;     //so a slow chunk does not hold up the others
+
+    private final ByteBuffer buf;
+    private final int[] ends = new int[FIELDS];     //end of each field of the line being parsed
+    private byte[] scratch = new byte[64];          //bytes of the requester being decoded
+    private int nRecords;                           //number of records given by the header
+    private int dataStart;                          //position of the first line after the header
+
+    private TripFileParser(ByteBuffer buf) {
+        this.buf = buf;
+    }
+
+    /**
+     * @param f File input file
+     * @param nThreads int number of threads to parse a large file on (at most one per processor)
+     * @return List<TripRequest> trip requests, or null if the file is too large to map
+     * @throws IOException if the file cannot be read or is not in the input file format
+     */
+    static List<TripRequest> parse(File f, int nThreads) throws IOException {
+        //more threads than processors would only add the cost of counting lines
+        return parse(f, Math.min(nThreads, Runtime.getRuntime().availableProcessors()), MIN_CHUNK);
+    }
+
+    /**
+     * As parse, with the number of threads and the smallest chunk given, so small files
+     * can be split into chunks to test the chunk boundaries
+     * @param f File input file
+     * @param nThreads int number of threads
+     * @param minChunk int smallest chunk in bytes
+     * @return List<TripRequest> trip requests, or null if the file is too large to map
+     * @throws IOException if the file cannot be read or is not in the input file format
+     */
+    static List<TripRequest> parse(File f, int nThreads, int minChunk) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r"); FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                return null;
+            }
+            //the mapping stays valid once the channel is closed
+            TripFileParser parser = new TripFileParser(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            parser.readHeader();
+            int nChunks = Math.min(nThreads * CHUNKS_PER_THREAD, (parser.buf.limit() - parser.dataStart) / minChunk);
+            if (nThreads > 1 && nChunks > 1) {
+                return parser.parseChunks(nThreads, nChunks);
+            }
+            List<TripRequest> tripRequests = new ArrayList<>();
+            parser.parseLines(parser.dataStart, parser.buf.limit(), 1, parser.getLastLine(), tripRequests);
+            return tripRequests;
+        }
+    }
+
+    /**
+     * Parse the lines after the header in chunks, in parallel
+     * @param nThreads int size of the fork/join pool
+     * @param nChunks int number of chunks
+     * @return List<TripRequest> trip requests, in the order of the file
+     * @throws IOException the error of the first line in the file that is not in the input file format
+     */
+    private List<TripRequest> parseChunks(int nThreads, int nChunks) throws IOException {
+        //chunks of about equal size, each boundary moved on to the start of a line
+        final int[] starts = new int[nChunks + 1];
+        starts[0] = dataStart;
+        starts[nChunks] = buf.limit();
+        for (int c = 1; c < nChunks; c++) {
+            int pos = Math.max(starts[c - 1], dataStart + (int) ((long) (buf.limit() - dataStart) * c / nChunks));
+            starts[c] = nextLine(lineEnd(pos, buf.limit()), buf.limit());
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(nThreads);
+        try {
+            //1. count the lines of each chunk, giving the number of each chunk's first line
+            List<Callable<Integer>> counts = new ArrayList<>();
+            for (int c = 0; c < nChunks; c++) {
+                final int from = starts[c], to = starts[c + 1];
+                counts.add(() -> countLines(from, to));
+            }
+            int[] firstLines = new int[nChunks];
+            int line = 1;
+            List<Future<Integer>> counted = pool.invokeAll(counts);
+            for (int c = 0; c < nChunks; c++) {
+                firstLines[c] = line;
+                line += counted.get(c).get();
+            }
+
+            //2. parse each chunk that has lines before the last one to be read
+            //(a chunk's error is kept rather than thrown, as the pool wraps checked exceptions)
+            final int lastLine = getLastLine();
+            final IOException[] errors = new IOException[nChunks];
+            List<Callable<List<TripRequest>>> chunks = new ArrayList<>();
+            for (int c = 0; c < nChunks && firstLines[c] <= lastLine; c++) {
+                final int chunk = c, from = starts[c], to = starts[c + 1], firstLine = firstLines[c];
+                final int nLines = Math.min(c + 1 < nChunks ? firstLines[c + 1] : line, lastLine + 1) - firstLine;
+                chunks.add(() -> {
+                    List<TripRequest> out = new ArrayList<>(nLines);
+                    try {
+                        new TripFileParser(buf).parseLines(from, to, firstLine, lastLine, out);
+                    } catch (IOException ex) {
+                        errors[chunk] = ex;
+                    }
+                    return out;
+                });
+            }
+            List<Future<List<TripRequest>>> parsed = pool.invokeAll(chunks);
+            List<TripRequest> tripRequests = new ArrayList<>(Math.min(line - 1, lastLine));
+            for (int c = 0; c < parsed.size(); c++) {
+                if (errors[c] != null) {
+                    throw errors[c];
+                }
+                tripRequests.addAll(parsed.get(c).get());
+            }
+            return tripRequests;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing");
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException("Parsing failed", ex.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Read the number of records from the first line
+     * @throws IOException if it is missing or not a number
+     */
+    private void readHeader() throws IOException {
+        if (buf.limit() == 0) {
+            throw new IOException("Error parsing file.  First line is empty");
+        }
+        int end = lineEnd(0, buf.limit());
+        long value = parseInt(0, end);
+        if (value == INVALID) {
+            throw new IOException("Error parsing file.  Expected number of records on first line");
+        }
+        nRecords = (int) value;
+        dataStart = nextLine(end, buf.limit());
+    }
+
+    /**
+     * @return int number of the last line read, given the header (the first line is always read)
+     */
+    private int getLastLine() {
+        return Math.max(1, nRecords);
+    }
+
+    /**
+     * Parse the lines between two positions
+     * @param from int position of the start of a line
+     * @param to int position after the end of the last line (after its line break, or the end of the file)
+     * @param firstLine int number of the line at from, for error messages
+     * @param lastLine int number of the last line to parse, however many lines follow it
+     * @param out List<TripRequest> a trip request is added for each line, in order
+     * @throws IOException if a line is not in the input file format
+     */
+    private void parseLines(int from, int to, int firstLine, int lastLine, List<TripRequest> out) throws IOException {
+        int pos = from;
+        for (int line = firstLine; pos < to && line <= lastLine; line++) {
+            int end = lineEnd(pos, to);
+            out.add(parseLine(pos, end, line));
+            pos = nextLine(end, to);
+        }
+    }
+
+    /**
+     * @return int position of the newline or carriage return ending the line at from, or to if there is none
+     */
+    private int lineEnd(int from, int to) {
+        int pos = from;
+        while (pos < to && buf.get(pos) != '\n' && buf.get(pos) != '\r') {
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * @param end int position of a line's end, as lineEnd
+     * @param to int
+     * @return int position of the next line, after the line break (a carriage return and newline together are one)
+     */
+    private int nextLine(int end, int to) {
+        if (end >= to) {
+            return to;
+        }
+        return buf.get(end) == '\r' && end + 1 < to && buf.get(end + 1) == '\n' ? end + 2 : end + 1;
+    }
+
+    /**
+     * @return int number of lines between two line starts, including a last line with no line break
+     */
+    private int countLines(int from, int to) {
+        int lines = 0;
+        for (int pos = from; pos < to; pos++) {
+            byte b = buf.get(pos);
+            if (b == '\r' || (b == '\n' && (pos == from || buf.get(pos - 1) != '\r'))) {
+                lines++;
+            }
+        }
+        return to > from && buf.get(to - 1) != '\n' && buf.get(to - 1) != '\r' ? lines + 1 : lines;
+    }
+
+    private TripRequest parseLine(int start, int end, int line) throws IOException {
+        //find the fields; empty fields after the eighth are ignored, as String.split drops them
+        int nFields = 0;
+        int pos = start;
+        while (true) {
+            while (pos < end && buf.get(pos) != '\t') {
+                pos++;
+            }
+            if (nFields < FIELDS) {
+                ends[nFields] = pos;
+            }
+            nFields++;
+            if (pos == end) {
+                break;
+            }
+            pos++;
+        }
+        if (nFields < FIELDS || ends[FIELDS - 1] == ends[FIELDS - 2] + 1 || end - ends[FIELDS - 1] != nFields - FIELDS) {
+            throw new IOException("Error parsing file.  Expected 8 values on line " + line);
+        }
+
+        long tripId = parseInt(ends[0] + 1, ends[1]);
+        if (tripId == INVALID) {
+            throw new IOException("Error parsing file.  Expected numeric trip identifier on line " + line);
+        }
+        int departAfter = parseTime(ends[1] + 1, ends[2]);
+        if (departAfter < 0) {
+            throw new IOException("Error parsing file.  Depart after time must be in HH:mm format on line " + line);
+        }
+        int arriveBefore = parseTime(ends[2] + 1, ends[3]);
+        if (arriveBefore < 0) {
+            throw new IOException("Error parsing file.  Arrive before time must be in HH:mm format on line " + line);
+        }
+        long originX = parseInt(ends[3] + 1, ends[4]);
+        long originY = parseInt(ends[4] + 1, ends[5]);
+        if (originX == INVALID || originY == INVALID) {
+            throw new IOException("Error parsing file. Origin X Y Coordinates must be integers on line " + line);
+        }
+        long destX = parseInt(ends[5] + 1, ends[6]);
+        long destY = parseInt(ends[6] + 1, ends[7]);
+        if (destX == INVALID || destY == INVALID) {
+            throw new IOException("Error parsing file. Destination X Y Coordinates must be integers on line " + line);
+        }
+        return InputParser.newTripRequest(decode(start, ends[0]), (int) tripId, departAfter, arriveBefore,
+                (int) originX, (int) originY, (int) destX, (int) destY);
+    }
+
+    /**
+     * @return long the int between two positions, as Integer.parseInt, or INVALID
+     */
+    private long parseInt(int from, int to) {
+        int pos = from;
+        boolean negative = false;
+        if (pos < to && (buf.get(pos) == '-' || buf.get(pos) == '+')) {
+            negative = buf.get(pos) == '-';
+            pos++;
+        }
+        if (pos == to) {
+            return INVALID;
+        }
+        long value = 0;
+        for (; pos < to; pos++) {
+            int digit = buf.get(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                return INVALID;
+            }
+        }
+        value = negative ? -value : value;
+        return value > Integer.MAX_VALUE ? INVALID : value;
+    }
+
+    /**
+     * @return int the H:mm time between two positions as a minute of day, or -1.  As
+     * DateTimeFormatter, the hour may have up to 19 digits (e.g. 009:00)
+     */
+    private int parseTime(int from, int to) {
+        int colon = to - 3;
+        if (colon <= from || colon - from > 19 || buf.get(colon) != ':') {
+            return -1;
+        }
+        int hour = 0;
+        for (int pos = from; pos < colon; pos++) {
+            int digit = buf.get(pos) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            hour = Math.min(hour * 10 + digit, 100);     //any hour past 24 is as bad as 100
+        }
+        int tens = buf.get(colon + 1) - '0';
+        int units = buf.get(colon + 2) - '0';
+        if (tens < 0 || tens > 5 || units < 0 || units > 9) {
+            return -1;
+        }
+        int minute = tens * 10 + units;
+        //as LocalTime.parse, 24:00 is midnight
+        if (hour == 24 && minute == 0) {
+            return 0;
+        }
+        return hour > 23 ? -1 : hour * 60 + minute;
+    }
+
+    private String decode(int from, int to) {
+        int length = to - from;
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = buf.get(from + i);
+        }
+        return new String(scratch, 0, length, CHARSET);
+    }
+}
@@ -0,0 +1,254 @@
+package ridesharing.algorithm;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import ridesharing.model.Node;
+import ridesharing.model.TripRequest;
+
+/**
+ * Generates synthetic trip requests for scale testing, either as a list or as an input
+ * file in the format read by InputParser.  Trip ends are spread over a square city,
+ * optionally clustered around hotspots and along commuter corridors between them, and
+ * departures can be concentrated around morning and evening rush hour peaks
+ * @author aengusmccullough
+ */
+public class TripRequestGenerator {
+
+    private static final int LAST_MINUTE = 24 * 60 - 1;
+
+    private int nTrips = 1000;
+    private int extent = 800;           //width and height of the city in pixels (5 pixels per km)
+    private int nHotspots = 0;          //number of hotspots trip ends cluster around
+    private int hotspotRadius = 40;     //standard deviation of trip ends around a hotspot (pixels)
+    private int hotspotShare = 50;      //% of trip ends drawn from a hotspot
+    private int commuterShare = 0;      //% of trips along a corridor between two hotspots
+    private int minSlack = 10;          //time window width, in minutes beyond the direct travel time
+    private int maxSlack = 60;
+    private int peakShare = 50;         //% of trips departing in a rush hour peak
+    private int morningPeak = 8 * 60;
+    private int eveningPeak = 17 * 60;
+    private int peakSpread = 45;        //standard deviation of departures around a peak (minutes)
+    private int dayStart = 6 * 60;      //departures outside peaks are uniform over the day
+    private int dayEnd = 22 * 60;
+    private long seed = System.nanoTime();
+
+    /**
+     * Generate the trip requests.  Only the depart after and arrive before times are set,
+     * as they would be by InputParser
+     * @return List<TripRequest> trip requests with ids 1..nTrips
+     */
+    public List<TripRequest> generate() {
+        Random rnd = new Random(seed);
+        int[][] hotspots = new int[nHotspots][];
+        for (int i = 0; i < nHotspots; i++) {
+            hotspots[i] = new int[]{rnd.nextInt(extent), rnd.nextInt(extent)};
+        }
+
+        List<TripRequest> result = new ArrayList<>(nTrips);
+        for (int id = 1; id <= nTrips; id++) {
+            int departAfter = departure(rnd);
+            int[] from;
+            int[] to;
+            if (nHotspots > 1 && rnd.nextInt(100) < commuterShare) {
+                //commuter: home hotspot to work hotspot in the morning, back in the afternoon
+                int home = (int) Math.floorMod(id * 7919L, (long) nHotspots);
+                int work = (home + 1 + (int) Math.floorMod(id * 104729L, (long) (nHotspots - 1))) % nHotspots;
+                boolean outbound = departAfter < 12 * 60;
+                from = around(rnd, hotspots[outbound ? home : work]);
+                to = around(rnd, hotspots[outbound ? work : home]);
+            } else {
+                from = tripEnd(rnd, hotspots);
+                to = tripEnd(rnd, hotspots);
+            }
+
+            Node source = node(id, true, from);
+            Node dest = node(id, false, to);
+            int travelTime = (int) Math.ceil(source.distanceTo(dest));
+            int slack = minSlack + rnd.nextInt(maxSlack - minSlack + 1);
+            //keep the whole trip within the day
+            departAfter = Math.max(0, Math.min(departAfter, LAST_MINUTE - travelTime - slack));
+            source.setEarliest(departAfter);
+            dest.setLatest(Math.min(LAST_MINUTE, departAfter + travelTime + slack));
+
+            TripRequest tr = new TripRequest();
+            tr.setTripId(id);
+            tr.setRequester("Requester" + id);
+            tr.setSource(source);
+            tr.setDestination(dest);
+            result.add(tr);
+        }
+        return result;
+    }
+
+    /**
+     * Write trip requests as an input file (header with the number of records, then one
+     * tab separated line per trip request)
+     * @param f File output file
+     * @param tripRequests List<TripRequest>
+     * @throws IOException
+     */
+    public static void writeInputFile(File f, List<TripRequest> tripRequests) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(f))) {
+            writer.write(Integer.toString(tripRequests.size()));
+            writer.newLine();
+            for (TripRequest tr : tripRequests) {
+                writer.write(tr.getRequester() + "\t" + tr.getTripId() + "\t"
+                        + formatTime(tr.getSource().getEarliest()) + "\t" + formatTime(tr.getDestination().getLatest()) + "\t"
+                        + tr.getSource().getxCoord() + "\t" + tr.getSource().getyCoord() + "\t"
+                        + tr.getDestination().getxCoord() + "\t" + tr.getDestination().getyCoord());
+                writer.newLine();
+            }
+        }
+    }
+
+    private int departure(Random rnd) {
+        double t;
+        if (rnd.nextInt(100) < peakShare) {
+            int peak = rnd.nextBoolean() ? morningPeak : eveningPeak;
+            t = peak + rnd.nextGaussian() * peakSpread;
+        } else {
+            t = dayStart + rnd.nextInt(Math.max(1, dayEnd - dayStart));
+        }
+        return (int) Math.max(0, Math.min(LAST_MINUTE, Math.round(t)));
+    }
+
+    private int[] tripEnd(Random rnd, int[][] hotspots) {
+        if (hotspots.length > 0 && rnd.nextInt(100) < hotspotShare) {
+            return around(rnd, hotspots[rnd.nextInt(hotspots.length)]);
+        }
+        return new int[]{rnd.nextInt(extent), rnd.nextInt(extent)};
+    }
+
+    private int[] around(Random rnd, int[] centre) {
+        return new int[]{clamp(centre[0] + rnd.nextGaussian() * hotspotRadius), clamp(centre[1] + rnd.nextGaussian() * hotspotRadius)};
+    }
+
+    private int clamp(double coord) {
+        return (int) Math.max(0, Math.min(extent - 1, Math.round(coord)));
+    }
+
+    private static Node node(int tripId, boolean source, int[] coords) {
+        Node n = new Node();
+        n.setTripId(tripId);
+        n.setSource(source);
+        n.setxCoord(coords[0]);
+        n.setyCoord(coords[1]);
+        return n;
+    }
+
+    private static String formatTime(int minuteOfDay) {
+        return String.format("%d:%02d", minuteOfDay / 60, minuteOfDay % 60);
+    }
+
+    /**
+     * Writes a generated input file.
+     * Usage: <path_to_output_file> [--trips n] [--extent pixels] [--hotspots n] [--commuters %]
+     * [--peak %] [--window max slack minutes] [--seed n]
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        Map<String, String> clArgs = Main.parseCommandLineArgs(args);
+        if (!clArgs.containsKey("input")) {
+            Main.exitWithException("Usage: <path_to_output_file> [--trips n] [--extent pixels] [--hotspots n] "
+                    + "[--commuters %] [--peak %] [--window max slack minutes] [--seed n]");
+        }
+        TripRequestGenerator generator = new TripRequestGenerator();
+        try {
+            if (clArgs.containsKey("trips")) {
+                generator.setTrips(Integer.parseInt(clArgs.get("trips")));
+            }
+            if (clArgs.containsKey("extent")) {
+                generator.setExtent(Integer.parseInt(clArgs.get("extent")));
+            }
+            if (clArgs.containsKey("hotspots")) {
+                generator.setHotspots(Integer.parseInt(clArgs.get("hotspots")), generator.hotspotRadius, generator.hotspotShare);
+            }
+            if (clArgs.containsKey("commuters")) {
+                generator.setCommuterShare(Integer.parseInt(clArgs.get("commuters")));
+            }
+            if (clArgs.containsKey("peak")) {
+                generator.setPeaks(Integer.parseInt(clArgs.get("peak")), generator.morningPeak, generator.eveningPeak, generator.peakSpread);
+            }
+            if (clArgs.containsKey("window")) {
+                generator.setTimeWindow(Math.min(generator.minSlack, Integer.parseInt(clArgs.get("window"))), Integer.parseInt(clArgs.get("window")));
+            }
+            if (clArgs.containsKey("seed")) {
+                generator.setSeed(Long.parseLong(clArgs.get("seed")));
+            }
+        } catch (NumberFormatException ex) {
+            Main.exitWithException("Options must be integers");
+        }
+        try {
+            writeInputFile(new File(clArgs.get("input")), generator.generate());
+        } catch (IOException ex) {
+            Main.exitWithException("An error occurred attempting to write output file to: " + clArgs.get("input"));
+        }
+    }
+
+    /**
+     * @param nTrips int number of trip requests to generate
+     */
+    public void setTrips(int nTrips) {
+        this.nTrips = nTrips;
+    }
+
+    /**
+     * @param extent int width and height of the city in pixels (5 pixels per km)
+     */
+    public void setExtent(int extent) {
+        this.extent = extent;
+    }
+
+    /**
+     * @param nHotspots int number of hotspots
+     * @param radius int standard deviation of trip ends around a hotspot (pixels)
+     * @param share int % of trip ends drawn from a hotspot
+     */
+    public void setHotspots(int nHotspots, int radius, int share) {
+        this.nHotspots = nHotspots;
+        this.hotspotRadius = radius;
+        this.hotspotShare = share;
+    }
+
+    /**
+     * @param commuterShare int % of trips along a corridor between two hotspots (needs 2 or more hotspots)
+     */
+    public void setCommuterShare(int commuterShare) {
+        this.commuterShare = commuterShare;
+    }
+
+    /**
+     * @param minSlack int minimum minutes allowed beyond the direct travel time
+     * @param maxSlack int maximum minutes allowed beyond the direct travel time
+     */
+    public void setTimeWindow(int minSlack, int maxSlack) {
+        this.minSlack = minSlack;
+        this.maxSlack = maxSlack;
+    }
+
+    /**
+     * @param share int % of trips departing in a rush hour peak
+     * @param morningPeak int minute of day
+     * @param eveningPeak int minute of day
+     * @param spread int standard deviation of departures around a peak (minutes)
+     */
+    public void setPeaks(int share, int morningPeak, int eveningPeak, int spread) {
+        this.peakShare = share;
+        this.morningPeak = morningPeak;
+        this.eveningPeak = eveningPeak;
+        this.peakSpread = spread;
+    }
+
+    /**
+     * @param seed long random seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+}
@@ -0,0 +1,64 @@
+package ridesharing.algorithm;
+
+/**
+ * Unordered list of request positions used for the construction bookkeeping.
+ * Adding, removing at a position (by moving the last item into its place) and
+ * clearing all take constant time
+ * @author aengusmccullough
+ */
+class Worklist {
+
+    private final int[] items;
+    private int size;
+
+    /**
+     * @param capacity int largest number of items the list will hold
+     */
+    Worklist(int capacity) {
+        this.items = new int[capacity];
+    }
+
+    void add(int item) {
+        items[size++] = item;
+    }
+
+    int get(int i) {
+        return items[i];
+    }
+
+    /**
+     * Remove the item at position i, moving the last item into its place
+     * @param i int
+     * @return int the removed item
+     */
+    int removeAt(int i) {
+        int item = items[i];
+        items[i] = items[--size];
+        return item;
+    }
+
+    /**
+     * @return int position of the smallest item (the list must not be empty)
+     */
+    int indexOfMin() {
+        int min = 0;
+        for (int i = 1; i < size; i++) {
+            if (items[i] < items[min]) {
+                min = i;
+            }
+        }
+        return min;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+}
@@ -1,17 +1,16 @@
 package ridesharing.model;
 
-import java.util.Collections;
 import java.util.List;
 
 /**
- * Structure to store travel times between all nodes
+ * Structure to store travel times between all nodes.  Times are held in a single
+ * row-major float array indexed by the dense node index assigned at construction
  * @author aengusmccullough
  */
-public class AllPairsShortestPathMatrix {
+public class AllPairsShortestPathMatrix implements TravelTimeProvider {
 
-    private final double[][] matrix;
-    public static final int ORIGIN = 0;
-    public static final int DEST = 1;
+    private final float[] matrix;
+    private final int size;     //number of nodes (2 per trip request)
 
     /**
      * Construct from list of trip requests
@@ -19,81 +18,38 @@ public class AllPairsShortestPathMatrix {
      */
     public AllPairsShortestPathMatrix(List<TripRequest> tripRequests) {
 
-        //sort the trip requests by id, because we will use this to lookup 
-        Collections.sort(tripRequests);
-
-        //size the matrix to contain a source and destination point for each trip
+        //each node has a dense index, sources first then destinations
         //e.g.          |trip1src|trip2src|trip1dest|trip2dest
         // trip1src     |       0
-        // trip2src     |               0   
+        // trip2src     |               0
         // trip1dest    |                       0
         // trip2dest    |                               0
-        matrix = new double[tripRequests.size() * 2][tripRequests.size() * 2];
-        
-        int row = 0;
-        int col = 0;
-        for (row = 0; row < matrix.length / 2; row++) {
-            //1st quadrant -> origin/origin
-            for (col = 0; col < matrix[row].length / 2; col++) {
-                matrix[row][col] = tripRequests.get(row).getSource().distanceTo(tripRequests.get(col).getSource());
-            }
-            //2nd quadrant -> origin/dest            
-            for (; col < matrix[row].length; col++) {
-                matrix[row][col] = tripRequests.get(row).getSource().distanceTo(tripRequests.get(col - (matrix.length / 2)).getDestination());
-            }
+        int nTrips = tripRequests.size();
+        size = nTrips * 2;
+        if ((long) size * size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many trip requests for an in-memory matrix: " + nTrips);
         }
+        Node[] nodes = TravelTimeProvider.indexNodes(tripRequests);
 
-        for (; row < matrix.length; row++) {
-            //3rd quadrant dest/origin
-            for (col = 0; col < matrix[row].length / 2; col++) {
-                matrix[row][col] = tripRequests.get(row - (matrix.length / 2)).getDestination().distanceTo(tripRequests.get(col).getSource());
-            }
-            //4th quadrant  dest/dest
-            for (; col < matrix[row].length; col++) {
-                matrix[row][col] = tripRequests.get(row - (matrix.length / 2)).getDestination().distanceTo(tripRequests.get(col - (matrix.length / 2)).getDestination());
+        matrix = new float[size * size];
+        for (int row = 0; row < size; row++) {
+            int offset = row * size;
+            for (int col = 0; col < size; col++) {
+                matrix[offset + col] = (float) nodes[row].distanceTo(nodes[col]);
             }
         }
     }
-    
-    
+
+
     /**
      * Returns the distance between two nodes in km (this is also the travel time in minutes assuming average speed of 60km/h)
      * @param a Node
      * @param b Node
      * @return double km or mins to destination
      */
+    @Override
     public double getTravelTime(Node a, Node b){
-        return getTravelTime(a.getTripId(), a.isSource()?ORIGIN:DEST, b.getTripId(), b.isSource()?ORIGIN:DEST);
-    }
-    
-    
-    /**
-     * Private method to retrieve the trip request
-     * @param idTripA int tripid
-     * @param originDestTripA int origin/dest
-     * @param idTripB int tripid
-     * @param originDestTripB int origin/dest
-     * @return  double traveltime (mins) or distance (km)
-     */
-    private double getTravelTime(int idTripA,int originDestTripA,int idTripB,int originDestTripB) {
-        //zero based array
-        idTripA--;
-        idTripB--;  
-        
-        if(originDestTripA==ORIGIN && originDestTripB==ORIGIN){            
-            return matrix[idTripA][idTripB];
-        }
-        if(originDestTripA==ORIGIN && originDestTripB==DEST){                        
-            return matrix[idTripA][(matrix.length/2)+idTripB];
-            
-        }
-        if(originDestTripA==DEST && originDestTripB==ORIGIN){            
-            return matrix[(matrix.length/2)+idTripA][idTripB];
-        }
-        if(originDestTripA==DEST && originDestTripB==DEST){            
-            return matrix[(matrix.length/2)+idTripA][(matrix.length/2)+idTripB];                    
-        }
-        return 0;
+        return matrix[a.getIndex() * size + b.getIndex()];
     }
 
 }
@@ -0,0 +1,73 @@
+package ridesharing.model;
+
+import java.util.List;
+
+/**
+ * Computes travel times on demand rather than up front, so that memory and start up
+ * time depend on the pairs that are actually queried.  An optional bounded cache
+ * remembers recently used pairs; it is direct mapped and holds immutable entries,
+ * so it can be shared by concurrent solver iterations without locking
+ * @author aengusmccullough
+ */
+public class LazyTravelTimeProvider implements TravelTimeProvider {
+
+    private final Entry[] cache;
+    private final int size;     //number of nodes (2 per trip request)
+
+    /**
+     * Construct without a cache for nodes that are not known in advance (and so are not
+     * indexed), as when requests are dispatched as they arrive
+     */
+    public LazyTravelTimeProvider() {
+        this.size = 0;
+        this.cache = null;
+    }
+
+    /**
+     * Construct without a cache
+     * @param tripRequests List<TripRequest> input data
+     */
+    public LazyTravelTimeProvider(List<TripRequest> tripRequests) {
+        this(tripRequests, 0);
+    }
+
+    /**
+     * Construct with a cache of the given number of entries
+     * @param tripRequests List<TripRequest> input data
+     * @param cacheSize int number of cached pairs (0 = no cache)
+     */
+    public LazyTravelTimeProvider(List<TripRequest> tripRequests, int cacheSize) {
+        this.size = TravelTimeProvider.indexNodes(tripRequests).length;
+        this.cache = cacheSize > 0 ? new Entry[cacheSize] : null;
+    }
+
+    @Override
+    public double getTravelTime(Node a, Node b) {
+        if (cache == null) {
+            return a.distanceTo(b);
+        }
+        long key = (long) a.getIndex() * size + b.getIndex();
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 33) % cache.length;
+        Entry e = cache[slot];
+        if (e != null && e.key == key) {
+            return e.travelTime;
+        }
+        double travelTime = a.distanceTo(b);
+        cache[slot] = new Entry(key, travelTime);
+        return travelTime;
+    }
+
+    /**
+     * Cached travel time for a pair of nodes
+     */
+    private static class Entry {
+
+        private final long key;
+        private final double travelTime;
+
+        Entry(long key, double travelTime) {
+            this.key = key;
+            this.travelTime = travelTime;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package ridesharing.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Travel time matrix held in a binary file and memory mapped, so that it stays off the
+ * heap and can be reused across runs on the same trip requests.
+ * File layout: header (magic, version, node count, fingerprint of the trip requests)
+ * followed by the row-major float matrix indexed by dense node index
+ * @author aengusmccullough
+ */
+public class MappedTravelTimeMatrix implements TravelTimeProvider {
+
+    private static final int MAGIC = 0x5254544D;      //"RTTM"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8;
+
+    private final MappedByteBuffer[] segments;  //a mapping is limited to 2GB, so rows are split across segments
+    private final int size;                     //number of nodes (2 per trip request)
+    private final int rowsPerSegment;
+
+    private MappedTravelTimeMatrix(FileChannel channel, int size) throws IOException {
+        this.size = size;
+        long rowBytes = (long) size * 4;
+        this.rowsPerSegment = (int) Math.max(1, Integer.MAX_VALUE / Math.max(1, rowBytes));
+        int nSegments = (size + rowsPerSegment - 1) / rowsPerSegment;
+        this.segments = new MappedByteBuffer[nSegments];
+        for (int i = 0; i < nSegments; i++) {
+            long start = HEADER_BYTES + i * rowsPerSegment * rowBytes;
+            long rows = Math.min(rowsPerSegment, size - (long) i * rowsPerSegment);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, rows * rowBytes);
+        }
+    }
+
+    /**
+     * Map the matrix file for the given trip requests, writing it first if it does not
+     * exist or was built from different trip requests.  The file is written beside the
+     * target and moved into place, so another run that has the old file mapped keeps
+     * its mapping, and no run ever maps a half written matrix
+     * @param f File matrix file
+     * @param tripRequests List<TripRequest> input data
+     * @return MappedTravelTimeMatrix
+     * @throws IOException
+     */
+    public static MappedTravelTimeMatrix open(File f, List<TripRequest> tripRequests) throws IOException {
+        Node[] nodes = TravelTimeProvider.indexNodes(tripRequests);
+        long fingerprint = fingerprint(nodes);
+        MappedTravelTimeMatrix matrix = map(f, nodes.length, fingerprint);
+        if (matrix != null) {
+            return matrix;
+        }
+        File tmp = File.createTempFile(f.getName(), ".tmp", f.getAbsoluteFile().getParentFile());
+        try {
+            write(tmp, nodes, fingerprint);
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+        matrix = map(f, nodes.length, fingerprint);
+        if (matrix == null) {
+            throw new IOException("Matrix file was replaced while opening it: " + f);
+        }
+        return matrix;
+    }
+
+    @Override
+    public double getTravelTime(Node a, Node b) {
+        int row = a.getIndex();
+        int pos = ((row % rowsPerSegment) * size + b.getIndex()) * 4;
+        return segments[row / rowsPerSegment].getFloat(pos);
+    }
+
+    /**
+     * Write the matrix one row at a time so it never has to be held on the heap
+     * @param f File
+     * @param nodes Node[] nodes by index
+     * @param fingerprint long
+     * @throws IOException
+     */
+    private static void write(File f, Node[] nodes, long fingerprint) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw"); FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(nodes.length).putLong(fingerprint).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            ByteBuffer row = ByteBuffer.allocate(nodes.length * 4);
+            for (Node from : nodes) {
+                row.clear();
+                for (Node to : nodes) {
+                    row.putFloat((float) from.distanceTo(to));
+                }
+                row.flip();
+                while (row.hasRemaining()) {
+                    channel.write(row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Map an existing file if it holds the matrix for these nodes.  The header is checked
+     * on the same open file that is mapped, so a file moved into place in between is
+     * never mapped unchecked
+     * @param f File
+     * @param size int number of nodes
+     * @param fingerprint long
+     * @return MappedTravelTimeMatrix or null if the file does not exist or holds another matrix
+     * @throws IOException
+     */
+    private static MappedTravelTimeMatrix map(File f, int size, long fingerprint) throws IOException {
+        if (!f.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r"); FileChannel channel = raf.getChannel()) {
+            if (channel.size() != HEADER_BYTES + (long) size * size * 4) {
+                return null;
+            }
+            if (raf.readInt() != MAGIC || raf.readInt() != VERSION
+                    || raf.readInt() != size || raf.readLong() != fingerprint) {
+                return null;
+            }
+            return new MappedTravelTimeMatrix(channel, size);
+        }
+    }
+
+    /**
+     * Hash of the node ids and coordinates, used to detect a file built from other input
+     * @param nodes Node[]
+     * @return long
+     */
+    private static long fingerprint(Node[] nodes) {
+        long hash = 1125899906842597L;
+        for (Node n : nodes) {
+            hash = 31 * hash + n.getTripId();
+            hash = 31 * hash + (n.isSource() ? 1 : 0);
+            hash = 31 * hash + n.getxCoord();
+            hash = 31 * hash + n.getyCoord();
+        }
+        return hash;
+    }
+}
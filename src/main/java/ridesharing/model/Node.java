@@ -1,7 +1,5 @@
 package ridesharing.model;
 
-import java.time.LocalTime;
-
 /**
  * Structure for a pickup / dropoff Node on the graph
  * @author aengusmccullough
@@ -10,10 +8,11 @@ public class Node {
     
     private boolean source;  //flag to indicate whether this is a source or dest node
     private int tripId;     //the trip id this node originates from
+    private int index;      //dense index of this node in the travel time matrix
     private int xCoord;     
     private int yCoord;
-    private LocalTime earliest;     //for source node this will be given, for dest it will be computed
-    private LocalTime latest;       //for dest node this will be given, for source it will be computed
+    private int earliest;     //minute of day. For source node this will be given, for dest it will be computed
+    private int latest;       //minute of day. For dest node this will be given, for source it will be computed
 
     
     public Node(){
@@ -24,6 +23,7 @@ public class Node {
         this.source = copy.source;
         this.earliest = copy.earliest;
         this.tripId = copy.tripId;
+        this.index = copy.index;
         this.xCoord = copy.xCoord;
         this.yCoord = copy.yCoord;
         this.latest = copy.latest;
@@ -69,6 +69,20 @@ public class Node {
         this.tripId = tripId;
     }
 
+    /**
+     * @return int the dense index of this node in the travel time matrix
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @param index int the dense index to set
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
     /**
      * @return int the xCoord in pixels
      */
@@ -98,30 +112,30 @@ public class Node {
     }
 
     /**
-     * @return LocalTime the earliest
+     * @return int the earliest time at this node (minute of day)
      */
-    public LocalTime getEarliest() {
+    public int getEarliest() {
         return earliest;
     }
 
     /**
-     * @param  earliest LocalTime 
+     * @param  earliest int minute of day
      */
-    public void setEarliest(LocalTime earliest) {
+    public void setEarliest(int earliest) {
         this.earliest = earliest;
     }
 
     /**
-     * @return LocalTime the latest time at this node
+     * @return int the latest time at this node (minute of day)
      */
-    public LocalTime getLatest() {
+    public int getLatest() {
         return latest;
     }
 
     /**
-     * @param latest LocalTime the latest to set
+     * @param latest int the latest to set (minute of day)
      */
-    public void setLatest(LocalTime latest) {
+    public void setLatest(int latest) {
         this.latest = latest;
     }
     
@@ -1,8 +1,5 @@
 package ridesharing.model;
 
-import java.time.LocalTime;
-import static java.time.temporal.ChronoUnit.MINUTES;
-
 /**
  * Point structure is a Node as used in a route.  Extends point with service time (actual time the node is serviced)
  * and load (number of passengers immediately after visiting this node)
@@ -10,7 +7,7 @@ import static java.time.temporal.ChronoUnit.MINUTES;
  */
 public class Point extends Node{
     
-    private LocalTime serviceTime;  //actual time of service
+    private int serviceTime;  //actual time of service (minute of day)
     private int load;   //number of passengers immediately after service
     
     public Point(Node n){
@@ -29,16 +26,16 @@ public class Point extends Node{
     
     
     /**
-     * @return the serviceTime
+     * @return int the serviceTime (minute of day)
      */
-    public LocalTime getServiceTime() {
+    public int getServiceTime() {
         return serviceTime;
     }
 
     /**
-     * @param serviceTime the serviceTime to set
+     * @param serviceTime int the serviceTime to set (minute of day)
      */
-    public void setServiceTime(LocalTime serviceTime) {
+    public void setServiceTime(int serviceTime) {
         this.serviceTime = serviceTime;
     }
 
@@ -5,9 +5,10 @@
  */
 package ridesharing.model;
 
-import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Structure representing the route taken by a vehicle
@@ -18,6 +19,26 @@ public class Route {
     private List<Point> schedule;       
     private int capacity;    
     private double objective;
+
+    //per-position arrays used to check insertions in constant time, rebuilt after the route changes
+    private boolean cacheValid;
+    private boolean cacheFeasible;      //route passes canTraverse
+    private int[] cacheService;         //service time at each position
+    private int[] cacheLatest;          //latest service time at each position that keeps the rest of the route feasible
+    private int[] cacheWait;            //cumulative waiting time up to each position
+    private int[] cacheLoad;            //load immediately after each position
+    private int[][] cacheMinSlack;      //sparse table, range min of (latest - service + cumulative wait)
+    private int[][] cacheMaxLoad;       //sparse table, range max of load
+    private double[] cacheCost;         //prefix sum of edge distance / (load + 1)
+    //the objective is (trips - alpha * sum over edges of distance / load * weight), where the weight of
+    //the edge into a position is the sum of 1 / direct travel time of the trips on board along it
+    private boolean cacheObjectiveValid;
+    private int cacheTrips;             //number of trips served
+    private double[] cacheWeight;       //weight of the edge into each position
+    private double[] cacheShared;       //prefix sum of edge distance / load * weight
+    private double[] cacheSharedUp;     //prefix sum of edge distance / (load + 1) * weight
+    private double[] cacheSharedDown;   //prefix sum of edge distance / (load - 1) * weight, for loads above 1
+    private double[] cacheCostDown;     //prefix sum of edge distance / (load - 1), for loads above 1
     
     public Route(int capacity) {
         this.schedule = new ArrayList<>();        
@@ -32,17 +53,62 @@ public class Route {
         this.capacity = another.capacity;
         this.objective = another.objective;
         this.schedule = new ArrayList<>();
-        for (Point p : schedule) {
+        for (Point p : another.schedule) {
             Point pn = new Point(p);
             this.schedule.add(pn);
         }
     }
+    /**
+     * The route without the trip request at the given indices (as remove), sharing this
+     * route's points instead of copying them.  The points keep their service times and
+     * loads from this route, so the result is only read (canInsert, the deltas and
+     * evaluateObjective); copyWithInsertion or Route(Route) give a route that can be
+     * changed
+     * @param srcIdx int index of source point
+     * @param destIdx int index of dest point once the source point has been removed
+     * @return Route view of this route without the trip request
+     */
+    public Route without(int srcIdx, int destIdx) {
+        int n = schedule.size();
+        Route result = new Route(capacity);
+        result.objective = objective;
+        result.schedule = new ArrayList<>(n - 2);
+        result.schedule.addAll(schedule.subList(0, srcIdx));
+        result.schedule.addAll(schedule.subList(srcIdx + 1, destIdx + 1));
+        result.schedule.addAll(schedule.subList(destIdx + 2, n));
+        return result;
+    }
+
+    /**
+     * Copy of this route with a trip request inserted with its source before position a
+     * and its destination before position b, where canInsert has returned true.  Service
+     * times, loads and the objective are set again for the whole copy, so this route may
+     * be a view returned by without
+     * @param a int source insertion index
+     * @param b int destination insertion index (before insertion of the source)
+     * @param tr TripRequest
+     * @param matrix TravelTimeProvider
+     * @param alpha double constant
+     * @return Route the new route
+     */
+    public Route copyWithInsertion(int a, int b, TripRequest tr, TravelTimeProvider matrix, double alpha) {
+        Route result = new Route(this);
+        result.schedule.add(a, new Point(tr.getSource()));
+        result.schedule.add(b + 1, new Point(tr.getDestination()));
+        Point first = result.schedule.get(0);
+        first.setServiceTime(first.getEarliest());
+        first.setLoad(1);
+        result.calculateObjective(matrix, alpha);
+        return result;
+    }
+
     /**
      * Append a point to the end of the route without updating load/service time or performing any checks
      * @param pt Point
      */     
     public void append(Point pt) {
         this.getSchedule().add(pt);
+        cacheValid = false;
     }
 
     /**
@@ -50,18 +116,19 @@ public class Route {
      * @param another
      * @param matrix 
      */
-    public void appendRoute(Route another,AllPairsShortestPathMatrix matrix){
+    public void appendRoute(Route another,TravelTimeProvider matrix){
         for (Point pt : another.getSchedule()) {
             append(pt);
         }
         update(matrix);
     }
     /**
-     * Remove a trip request at given indices
+     * Remove a trip request at given indices (the reverse of insert)
      * @param srcIdx  int index of source point
-     * @param destIdx int index of dest point
+     * @param destIdx int index of dest point once the source point has been removed
      */
     public void remove(int srcIdx, int destIdx){
+        cacheValid = false;
         this.getSchedule().remove(srcIdx);
         this.getSchedule().remove(destIdx);
         //recalculate service time and load for all points after insertion
@@ -70,8 +137,8 @@ public class Route {
                 getSchedule().get(i).setServiceTime(getSchedule().get(i).getEarliest());
                 getSchedule().get(i).setLoad(1);
             }else{                
-                LocalTime timeToI = getSchedule().get(i-1).getServiceTime().plusMinutes((long)Math.ceil(getSchedule().get(i).distanceTo(getSchedule().get(i))));
-                if(timeToI.isBefore(getSchedule().get(i).getEarliest())){
+                int timeToI = getSchedule().get(i-1).getServiceTime() + (int)Math.ceil(getSchedule().get(i-1).distanceTo(getSchedule().get(i)));
+                if(timeToI < getSchedule().get(i).getEarliest()){
                     getSchedule().get(i).setServiceTime(getSchedule().get(i).getEarliest());
                 }else{
                     getSchedule().get(i).setServiceTime(timeToI);
@@ -92,6 +159,7 @@ public class Route {
      * @return 
      */
     public boolean insert(int aIdx,int bIdx,TripRequest tr){
+        cacheValid = false;
         //insert the trip into schedule        
         this.getSchedule().add(aIdx, new Point(tr.getSource()));
         this.getSchedule().add(bIdx+1,new Point(tr.getDestination()));
@@ -101,13 +169,13 @@ public class Route {
                 getSchedule().get(i).setServiceTime(getSchedule().get(i).getEarliest());
                 getSchedule().get(i).setLoad(1);
             }else{                
-                LocalTime timeToI = getSchedule().get(i-1).getServiceTime().plusMinutes((long)Math.ceil(getSchedule().get(i-1).distanceTo(getSchedule().get(i))));
-                if(timeToI.isBefore(getSchedule().get(i).getEarliest())){
+                int timeToI = getSchedule().get(i-1).getServiceTime() + (int)Math.ceil(getSchedule().get(i-1).distanceTo(getSchedule().get(i)));
+                if(timeToI < getSchedule().get(i).getEarliest()){
                     getSchedule().get(i).setServiceTime(getSchedule().get(i).getEarliest());
                 }else{
                     getSchedule().get(i).setServiceTime(timeToI);
                 }
-                if(getSchedule().get(i).getServiceTime().isAfter(getSchedule().get(i).getLatest())){
+                if(getSchedule().get(i).getServiceTime() > getSchedule().get(i).getLatest()){
                     remove(aIdx,bIdx);
                     return false;
                 }
@@ -130,39 +198,409 @@ public class Route {
      * @param capacity
      * @return
      */
-    public static boolean canTraverse(List<Point> nodes, AllPairsShortestPathMatrix matrix, int capacity) {
+    public static boolean canTraverse(List<Point> nodes, TravelTimeProvider matrix, int capacity) {
         boolean res = false;
         if (nodes.isEmpty()) {
             return res;
         }
 
-        LocalTime serviceTime = nodes.get(0).getEarliest();
+        int serviceTime = nodes.get(0).getEarliest();
         int load = 1;
         for (int i = 1; i < nodes.size(); i++) {
             load = nodes.get(i).isSource() ? load + 1 : load - 1;
             if (load > capacity) {
                 return false;
             }
-            serviceTime = serviceTime.plusMinutes((int) Math.ceil(matrix.getTravelTime(nodes.get(i - 1), nodes.get(i))));
+            serviceTime += (int) Math.ceil(matrix.getTravelTime(nodes.get(i - 1), nodes.get(i)));
 
-            if (serviceTime.isBefore(nodes.get(i).getEarliest())) {
+            if (serviceTime < nodes.get(i).getEarliest()) {
                 //wait                
                 serviceTime = nodes.get(i).getEarliest();
             }
-            if (serviceTime.isAfter(nodes.get(i).getLatest())) {
+            if (serviceTime > nodes.get(i).getLatest()) {
                 return false;
             }            
         }
         return true;
     }
     
+    /**
+     * Checks in constant time whether the trip request can be inserted with its source
+     * before position a and its destination before position b (a &lt;= b), giving the
+     * same answer as canTraverse on the resulting schedule without building it
+     *
+     * @param a int source insertion index
+     * @param b int destination insertion index (before insertion of the source)
+     * @param tr TripRequest
+     * @param matrix TravelTimeProvider
+     * @param capacity vehicle capacity
+     * @return boolean feasible
+     */
+    public boolean canInsert(int a, int b, TripRequest tr, TravelTimeProvider matrix, int capacity) {
+        int n = getSchedule().size();
+        if (a < 0 || b < a || b > n) {
+            return false;
+        }
+        buildCache(matrix);
+        if (!cacheFeasible && n > 0) {
+            return false;
+        }
+        Node src = tr.getSource();
+        Node dest = tr.getDestination();
+
+        //source
+        int srcService = src.getEarliest();
+        if (a > 0) {
+            Point prev = getSchedule().get(a - 1);
+            srcService = Math.max(cacheService[a - 1] + (int) Math.ceil(matrix.getTravelTime(prev, src)), src.getEarliest());
+            if (srcService > src.getLatest() || cacheLoad[a - 1] + 1 > capacity) {
+                return false;
+            }
+        }
+
+        //points between source and destination are pushed forward and carry one more passenger
+        Node destPrev = src;
+        int destPrevService = srcService;
+        if (a < b) {
+            Point first = getSchedule().get(a);
+            int push = Math.max(srcService + (int) Math.ceil(matrix.getTravelTime(src, first)), first.getEarliest()) - cacheService[a];
+            if (rangeMin(cacheMinSlack, a, b - 1) < push + cacheWait[a]
+                    || rangeMax(cacheMaxLoad, a, b - 1) + 1 > capacity) {
+                return false;
+            }
+            destPrev = getSchedule().get(b - 1);
+            destPrevService = cacheService[b - 1] + Math.max(0, push - (cacheWait[b - 1] - cacheWait[a]));
+        }
+
+        //destination
+        int destService = Math.max(destPrevService + (int) Math.ceil(matrix.getTravelTime(destPrev, dest)), dest.getEarliest());
+        if (destService > dest.getLatest()) {
+            return false;
+        }
+
+        //remainder of the route
+        if (b < n) {
+            Point next = getSchedule().get(b);
+            int nextService = Math.max(destService + (int) Math.ceil(matrix.getTravelTime(dest, next)), next.getEarliest());
+            return nextService <= cacheLatest[b];
+        }
+        return true;
+    }
+
+    /**
+     * Number of leading positions of the route served no later than the given time.
+     * Service times never decrease along a route, so this is a binary search.  A trip end
+     * whose latest time this is can only be inserted before one of these positions or the
+     * one after them: from any later position it would be served too late
+     * @param time int minute of day
+     * @param matrix TravelTimeProvider
+     * @return int number of positions, 0..size
+     */
+    public int servedBy(int time, TravelTimeProvider matrix) {
+        buildCache(matrix);
+        int lo = 0, hi = cacheService.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cacheService[mid] <= time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Objective used to rank candidate insertion points: the cost shared with other
+     * passengers from the inserted source, relative to the direct distance.  Must only
+     * be called after canInsert has returned true for the same route
+     *
+     * @param a int source insertion index
+     * @param b int destination insertion index (before insertion of the source)
+     * @param tr TripRequest
+     * @param alpha double constant
+     * @return double objective
+     */
+    public double insertionObjective(int a, int b, TripRequest tr, double alpha) {
+        Node src = tr.getSource();
+        double cost = 0;
+        double direct = 0;
+        if (a < b) {
+            int srcLoad = (a > 0 ? cacheLoad[a - 1] : 0) + 1;
+            if (b - a >= 2) {
+                cost += src.distanceTo(getSchedule().get(a)) / srcLoad;
+            }
+            if (b - a >= 3) {
+                cost += cacheCost[b - 2] - cacheCost[a];
+            }
+            direct = src.distanceTo(getSchedule().get(b - 1));
+        }
+        return 1 - alpha * (cost / direct);
+    }
+
+    /**
+     * Change in the objective (as calculateObjective) from inserting a trip request with
+     * its source before position a and its destination before position b, touching only
+     * the edges around the two insertion points.  Must only be called after canInsert
+     * has returned true for the same route
+     *
+     * @param a int source insertion index
+     * @param b int destination insertion index (before insertion of the source)
+     * @param tr TripRequest
+     * @param matrix TravelTimeProvider
+     * @param alpha double constant
+     * @return double objective after insertion - objective before
+     */
+    public double insertionDelta(int a, int b, TripRequest tr, TravelTimeProvider matrix, double alpha) {
+        buildObjectiveCache(matrix);
+        int n = getSchedule().size();
+        Node src = tr.getSource();
+        Node dest = tr.getDestination();
+        double w = 1 / matrix.getTravelTime(src, dest);
+        int loadBefore = a > 0 ? cacheLoad[a - 1] : 0;
+        double change = 0;
+        if (a == b) {
+            //edge a-1 -> a is split by src -> dest
+            double weight = a > 0 && a < n ? cacheWeight[a] : 0;
+            if (weight > 0) {
+                Point prev = getSchedule().get(a - 1);
+                Point next = getSchedule().get(a);
+                change += (prev.distanceTo(src) + dest.distanceTo(next) - prev.distanceTo(next)) / loadBefore * weight;
+            }
+            change += src.distanceTo(dest) / (loadBefore + 1) * (weight + w);
+        } else {
+            //edge a-1 -> a is split by the source
+            Point first = getSchedule().get(a);
+            double weight = a > 0 ? cacheWeight[a] : 0;
+            if (weight > 0) {
+                Point prev = getSchedule().get(a - 1);
+                change += (prev.distanceTo(src) - prev.distanceTo(first)) / loadBefore * weight;
+            }
+            change += src.distanceTo(first) / (loadBefore + 1) * (weight + w);
+            //edges a -> b-1 carry one more passenger
+            change += cacheSharedUp[b - 1] - cacheSharedUp[a] + w * (cacheCost[b - 1] - cacheCost[a])
+                    - (cacheShared[b - 1] - cacheShared[a]);
+            //edge b-1 -> b is split by the destination
+            Point last = getSchedule().get(b - 1);
+            weight = b < n ? cacheWeight[b] : 0;
+            change += last.distanceTo(dest) / (cacheLoad[b - 1] + 1) * (weight + w);
+            if (weight > 0) {
+                Point next = getSchedule().get(b);
+                change += (dest.distanceTo(next) - last.distanceTo(next)) / cacheLoad[b - 1] * weight;
+            }
+        }
+        return 1 - alpha * change;
+    }
+
+    /**
+     * Change in the objective (as calculateObjective) from removing a trip request,
+     * touching only the edges around the removed points
+     *
+     * @param srcIdx int index of source point
+     * @param destIdx int index of dest point once the source point has been removed (as remove)
+     * @param matrix TravelTimeProvider
+     * @param alpha double constant
+     * @return double objective after removal - objective before
+     */
+    public double removalDelta(int srcIdx, int destIdx, TravelTimeProvider matrix, double alpha) {
+        buildObjectiveCache(matrix);
+        int n = getSchedule().size();
+        int s = srcIdx;
+        int d = destIdx + 1;
+        Point src = getSchedule().get(s);
+        Point dest = getSchedule().get(d);
+        double w = 1 / matrix.getTravelTime(src, dest);
+        double change = 0;
+        //edges into the removed points and out of the destination
+        change -= cacheShared[d] - cacheShared[s];
+        double weightAfter = d < n - 1 ? cacheWeight[d + 1] : 0;
+        if (weightAfter > 0) {
+            change -= dest.distanceTo(getSchedule().get(d + 1)) / cacheLoad[d] * weightAfter;
+        }
+        if (s > 0 && cacheWeight[s] > 0) {
+            change -= getSchedule().get(s - 1).distanceTo(src) / cacheLoad[s - 1] * cacheWeight[s];
+        }
+        if (d == s + 1) {
+            //src -> dest is taken out and its neighbours joined
+            if (s > 0 && d < n - 1 && cacheWeight[s] > 0) {
+                change += getSchedule().get(s - 1).distanceTo(getSchedule().get(d + 1)) / cacheLoad[s - 1] * cacheWeight[s];
+            }
+        } else {
+            //edges s+1 -> d-1 carry one less passenger, so are added back at the lower load
+            change += cacheSharedDown[d - 1] - cacheSharedDown[s + 1] - w * (cacheCostDown[d - 1] - cacheCostDown[s + 1]);
+            if (s > 0 && cacheWeight[s] > 0) {
+                change += getSchedule().get(s - 1).distanceTo(getSchedule().get(s + 1)) / cacheLoad[s - 1] * cacheWeight[s];
+            }
+            if (weightAfter > 0) {
+                change += getSchedule().get(d - 1).distanceTo(getSchedule().get(d + 1)) / cacheLoad[d] * weightAfter;
+            }
+        }
+        return -1 - alpha * change;
+    }
+
+    /**
+     * The objective as calculateObjective would return it, without updating the route
+     * @param matrix TravelTimeProvider
+     * @param alpha double constant
+     * @return double objective, or 0 if the route cannot be traversed
+     */
+    public double evaluateObjective(TravelTimeProvider matrix, double alpha) {
+        buildObjectiveCache(matrix);
+        int n = getSchedule().size();
+        if (!cacheFeasible) {
+            return 0;
+        }
+        return cacheTrips - alpha * cacheShared[n - 1];
+    }
+
+    /**
+     * Rebuilds the per-position arrays used by canInsert if the route has changed
+     * @param matrix TravelTimeProvider
+     */
+    private void buildCache(TravelTimeProvider matrix) {
+        if (cacheValid) {
+            return;
+        }
+        int n = getSchedule().size();
+        cacheService = new int[n];
+        cacheLatest = new int[n];
+        cacheWait = new int[n];
+        cacheCost = new double[n];
+        cacheObjectiveValid = false;
+        int[] slack = new int[n];
+        int[] load = new int[n];
+        cacheLoad = load;
+        cacheFeasible = n > 0;
+
+        //forward pass, as canTraverse
+        for (int i = 0; i < n; i++) {
+            Point pt = getSchedule().get(i);
+            if (i == 0) {
+                cacheService[i] = pt.getEarliest();
+                load[i] = 1;
+            } else {
+                Point prev = getSchedule().get(i - 1);
+                int arrival = cacheService[i - 1] + (int) Math.ceil(matrix.getTravelTime(prev, pt));
+                cacheService[i] = Math.max(arrival, pt.getEarliest());
+                cacheWait[i] = cacheWait[i - 1] + cacheService[i] - arrival;
+                load[i] = pt.isSource() ? load[i - 1] + 1 : load[i - 1] - 1;
+                cacheCost[i] = cacheCost[i - 1] + prev.distanceTo(pt) / (load[i - 1] + 1);
+                if (cacheService[i] > pt.getLatest() || load[i] > capacity) {
+                    cacheFeasible = false;
+                }
+            }
+            slack[i] = pt.getLatest() - cacheService[i] + cacheWait[i];
+        }
+
+        //backward pass, latest service time at each position
+        for (int i = n - 1; i >= 0; i--) {
+            Point pt = getSchedule().get(i);
+            cacheLatest[i] = pt.getLatest();
+            if (i < n - 1) {
+                int travel = (int) Math.ceil(matrix.getTravelTime(pt, getSchedule().get(i + 1)));
+                cacheLatest[i] = Math.min(cacheLatest[i], cacheLatest[i + 1] - travel);
+            }
+        }
+
+        cacheMinSlack = sparseTable(slack, true);
+        cacheMaxLoad = sparseTable(load, false);
+        cacheValid = true;
+    }
+
+    /**
+     * Rebuilds the arrays used by the objective deltas if the route has changed.  These
+     * are only needed by the search, so are kept apart from the canInsert arrays
+     * @param matrix TravelTimeProvider
+     */
+    private void buildObjectiveCache(TravelTimeProvider matrix) {
+        buildCache(matrix);
+        if (cacheObjectiveValid) {
+            return;
+        }
+        int n = getSchedule().size();
+        cacheWeight = new double[n];
+        cacheShared = new double[n];
+        cacheSharedUp = new double[n];
+        cacheSharedDown = new double[n];
+        cacheCostDown = new double[n];
+        cacheTrips = 0;
+        Map<Integer, Point> destinations = new HashMap<>();
+        for (Point pt : getSchedule()) {
+            if (!pt.isSource()) {
+                destinations.put(pt.getTripId(), pt);
+            }
+        }
+        Map<Integer, Double> inverse = new HashMap<>();     //1 / direct travel time of each trip on board
+        double onBoard = 0;
+        for (int i = 0; i < n; i++) {
+            Point pt = getSchedule().get(i);
+            if (i > 0) {
+                double d = getSchedule().get(i - 1).distanceTo(pt);
+                int l = cacheLoad[i - 1];
+                //nobody on board carries no weight, reset so rounding cannot build up
+                cacheWeight[i] = l > 0 ? onBoard : 0;
+                cacheShared[i] = cacheShared[i - 1] + (l > 0 ? d / l * cacheWeight[i] : 0);
+                cacheSharedUp[i] = cacheSharedUp[i - 1] + d / (l + 1) * cacheWeight[i];
+                cacheSharedDown[i] = cacheSharedDown[i - 1] + (l > 1 ? d / (l - 1) * cacheWeight[i] : 0);
+                cacheCostDown[i] = cacheCostDown[i - 1] + (l > 1 ? d / (l - 1) : 0);
+            }
+            if (pt.isSource() && destinations.containsKey(pt.getTripId())) {
+                double w = 1 / matrix.getTravelTime(pt, destinations.get(pt.getTripId()));
+                inverse.put(pt.getTripId(), w);
+                onBoard += w;
+                cacheTrips++;
+            } else if (!pt.isSource() && inverse.containsKey(pt.getTripId())) {
+                onBoard -= inverse.remove(pt.getTripId());
+            }
+            if (cacheLoad[i] == 0) {
+                onBoard = 0;
+            }
+        }
+        cacheObjectiveValid = true;
+    }
+
+    /**
+     * Builds a sparse table for constant time range min / max queries
+     * @param values int[]
+     * @param min boolean min=true, max=false
+     * @return int[][] table, level k holds the result for ranges of length 2^k
+     */
+    private static int[][] sparseTable(int[] values, boolean min) {
+        int levels = 1;
+        while ((1 << levels) <= values.length) {
+            levels++;
+        }
+        int[][] table = new int[levels][];
+        table[0] = values;
+        for (int k = 1; k < levels; k++) {
+            int len = values.length - (1 << k) + 1;
+            table[k] = new int[len];
+            for (int i = 0; i < len; i++) {
+                int x = table[k - 1][i];
+                int y = table[k - 1][i + (1 << (k - 1))];
+                table[k][i] = min ? Math.min(x, y) : Math.max(x, y);
+            }
+        }
+        return table;
+    }
+
+    private static int rangeMin(int[][] table, int from, int to) {
+        int k = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+        return Math.min(table[k][from], table[k][to - (1 << k) + 1]);
+    }
+
+    private static int rangeMax(int[][] table, int from, int to) {
+        int k = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+        return Math.max(table[k][from], table[k][to - (1 << k) + 1]);
+    }
+
     /**
      * Calculates the objective for this route.     
-     * @param matrix AllPairsShortestPathMatrix
+     * @param matrix TravelTimeProvider
      * @param alpha  double constant
      * @return objective double
      */
-    public double calculateObjective(AllPairsShortestPathMatrix matrix,double alpha){  
+    public double calculateObjective(TravelTimeProvider matrix,double alpha){  
         if(!Route.canTraverse(this.getSchedule(), matrix, capacity)){
             return 0;
         }else{
@@ -197,9 +635,10 @@ public class Route {
     /**
      * Traverses route and updates load and service time
      *     
-     * @param matrix AllPairsShortestPathMatrix         
+     * @param matrix TravelTimeProvider         
      */
-    public  void update(AllPairsShortestPathMatrix matrix) {
+    public  void update(TravelTimeProvider matrix) {
+        cacheValid = false;
         if(!Route.canTraverse(getSchedule(),matrix,capacity)){
             return;
         }        
@@ -207,20 +646,20 @@ public class Route {
             return;
         }
 
-        LocalTime serviceTime = getSchedule().get(0).getEarliest();
+        int serviceTime = getSchedule().get(0).getEarliest();
         int load = 1;
         for (int i = 1; i < getSchedule().size(); i++) {
             load = getSchedule().get(i).isSource() ? load + 1 : load - 1;
             if (load > capacity) {
                 return;
             }
-            serviceTime = serviceTime.plusMinutes((int) Math.ceil(matrix.getTravelTime(getSchedule().get(i - 1), getSchedule().get(i))));
+            serviceTime += (int) Math.ceil(matrix.getTravelTime(getSchedule().get(i - 1), getSchedule().get(i)));
 
-            if (serviceTime.isBefore(getSchedule().get(i).getEarliest())) {
+            if (serviceTime < getSchedule().get(i).getEarliest()) {
                 //wait                
                 serviceTime = getSchedule().get(i).getEarliest();
             }
-            if (serviceTime.isAfter(getSchedule().get(i).getLatest())) {
+            if (serviceTime > getSchedule().get(i).getLatest()) {
                 return;
             }
             getSchedule().get(i).setServiceTime(serviceTime);
@@ -241,6 +680,7 @@ public class Route {
      */
     public void setSchedule(List<Point> schedule) {
         this.schedule = schedule;
+        cacheValid = false;
     }
 
     /**
@@ -0,0 +1,143 @@
+package ridesharing.model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Uniform grid over node coordinates, with the nodes of each cell sorted by earliest
+ * time.  Used to find the nodes that can reach a target point in time without looking
+ * at the nodes that cannot: cells too far away are skipped, and within a cell only the
+ * nodes that are early enough are visited
+ * @author aengusmccullough
+ */
+public class SpatialIndex {
+
+    private static final int PIXELS_PER_KM = 5;
+
+    private final Node[][] cells;       //nodes in each cell, sorted by earliest
+    private final int[][] positions;    //position of each node in cells in the list that was indexed
+    private final int[][] earliest;     //earliest time of each node in cells, for binary search
+    private final int minX;
+    private final int minY;
+    private final int cellSize;         //pixels
+    private final int nCols;
+    private final int nRows;
+    private final int minEarliest;      //earliest time of any indexed node
+
+    /**
+     * @param nodes List<Node> nodes to index (read only once built, so can be shared between threads)
+     */
+    public SpatialIndex(List<Node> nodes) {
+        int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = Integer.MIN_VALUE, y1 = Integer.MIN_VALUE;
+        for (Node n : nodes) {
+            x0 = Math.min(x0, n.getxCoord());
+            y0 = Math.min(y0, n.getyCoord());
+            x1 = Math.max(x1, n.getxCoord());
+            y1 = Math.max(y1, n.getyCoord());
+        }
+        if (nodes.isEmpty()) {
+            x0 = y0 = x1 = y1 = 0;
+        }
+        //aim for a few nodes per cell
+        long area = (long) (x1 - x0 + 1) * (y1 - y0 + 1);
+        int size = (int) Math.ceil(Math.sqrt(area * 4.0 / Math.max(1, nodes.size())));
+        this.cellSize = Math.max(PIXELS_PER_KM, size);
+        this.minX = x0;
+        this.minY = y0;
+        this.nCols = (x1 - x0) / cellSize + 1;
+        this.nRows = (y1 - y0) / cellSize + 1;
+        int min = Integer.MAX_VALUE;
+        for (Node n : nodes) {
+            min = Math.min(min, n.getEarliest());
+        }
+        this.minEarliest = min;
+
+        List<List<Integer>> buckets = new ArrayList<>();
+        for (int i = 0; i < nCols * nRows; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            Node n = nodes.get(i);
+            buckets.get(cell((n.getxCoord() - minX) / cellSize, (n.getyCoord() - minY) / cellSize)).add(i);
+        }
+        cells = new Node[buckets.size()][];
+        positions = new int[buckets.size()][];
+        earliest = new int[buckets.size()][];
+        for (int i = 0; i < cells.length; i++) {
+            List<Integer> bucket = buckets.get(i);
+            bucket.sort((Integer a, Integer b) -> Integer.compare(nodes.get(a).getEarliest(), nodes.get(b).getEarliest()));
+            cells[i] = new Node[bucket.size()];
+            positions[i] = new int[bucket.size()];
+            earliest[i] = new int[bucket.size()];
+            for (int j = 0; j < bucket.size(); j++) {
+                cells[i][j] = nodes.get(bucket.get(j));
+                positions[i][j] = bucket.get(j);
+                earliest[i][j] = cells[i][j].getEarliest();
+            }
+        }
+    }
+
+    /**
+     * Finds the indexed nodes that, leaving no earlier than their earliest time, can reach
+     * the target by the deadline: earliest + floor(distance in km) &lt;= deadline.  Distances
+     * are rounded down so that no node that could make it is missed
+     * @param target Node
+     * @param deadline int minute of day
+     * @return BitSet positions, in the indexed list, of the nodes that can reach the target in time
+     */
+    public BitSet canReach(Node target, int deadline) {
+        BitSet result = new BitSet();
+        if (deadline < minEarliest) {
+            return result;
+        }
+        int tx = target.getxCoord() - minX;
+        int ty = target.getyCoord() - minY;
+        //no node can travel further than this in the time available
+        long radius = ((long) deadline - minEarliest + 1) * PIXELS_PER_KM;
+        int col0 = (int) Math.max(0, (tx - radius) / cellSize);
+        int col1 = (int) Math.min(nCols - 1, (tx + radius) / cellSize);
+        int row0 = (int) Math.max(0, (ty - radius) / cellSize);
+        int row1 = (int) Math.min(nRows - 1, (ty + radius) / cellSize);
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                int c = cell(col, row);
+                if (cells[c].length == 0) {
+                    continue;
+                }
+                //nodes in this cell are at least this far from the target
+                int dx = Math.max(0, Math.max(col * cellSize - tx, tx - ((col + 1) * cellSize - 1)));
+                int dy = Math.max(0, Math.max(row * cellSize - ty, ty - ((row + 1) * cellSize - 1)));
+                int latestStart = deadline - (int) Math.floor(Math.sqrt((double) dx * dx + (double) dy * dy) / PIXELS_PER_KM);
+                int end = upperBound(earliest[c], latestStart);
+                for (int i = 0; i < end; i++) {
+                    Node n = cells[c][i];
+                    if (n.getEarliest() + (int) Math.floor(n.distanceTo(target)) <= deadline) {
+                        result.set(positions[c][i]);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private int cell(int col, int row) {
+        return row * nCols + col;
+    }
+
+    /**
+     * @return index of the first value greater than key
+     */
+    private static int upperBound(int[] values, int key) {
+        int lo = 0, hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] <= key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,39 @@
+package ridesharing.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Source of travel times between nodes.  Travel times are in minutes, which is also
+ * the distance in km as the average speed is 60km/h
+ * @author aengusmccullough
+ */
+public interface TravelTimeProvider {
+
+    /**
+     * Returns the distance between two nodes in km (this is also the travel time in minutes assuming average speed of 60km/h)
+     * @param a Node
+     * @param b Node
+     * @return double km or mins to destination
+     */
+    double getTravelTime(Node a, Node b);
+
+    /**
+     * Assigns a dense index to each node, sources first then destinations, with trip
+     * requests taken in trip id order so indices are stable for a given input
+     * @param tripRequests List<TripRequest> input data (sorted by trip id)
+     * @return Node[] nodes by index
+     */
+    static Node[] indexNodes(List<TripRequest> tripRequests) {
+        Collections.sort(tripRequests);
+        int nTrips = tripRequests.size();
+        Node[] nodes = new Node[nTrips * 2];
+        for (int i = 0; i < nTrips; i++) {
+            nodes[i] = tripRequests.get(i).getSource();
+            nodes[nTrips + i] = tripRequests.get(i).getDestination();
+            nodes[i].setIndex(i);
+            nodes[nTrips + i].setIndex(nTrips + i);
+        }
+        return nodes;
+    }
+}
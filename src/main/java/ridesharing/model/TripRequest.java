@@ -15,11 +15,21 @@ public class TripRequest implements Comparable<TripRequest>{
     private Node destination;   //destination node
     private String requester;   //name of requester
     private int tripId;         //unique identifier for this trip
-    private double delay;       //variable used in heuristic
     
-    public double travelTime(AllPairsShortestPathMatrix matrix){
+    public double travelTime(TravelTimeProvider matrix){
         return matrix.getTravelTime(source, destination);
     }
+
+    /**
+     * Computes the latest departure from the source and the earliest arrival at the
+     * destination from the given depart after / arrive before times
+     * @param matrix TravelTimeProvider
+     */
+    public void updateTimeWindows(TravelTimeProvider matrix){
+        int travelTime = (int) Math.ceil(travelTime(matrix));
+        source.setLatest(destination.getLatest() - travelTime);
+        destination.setEarliest(source.getEarliest() + travelTime);
+    }
     /**
      * @return the source
      */
@@ -80,20 +90,5 @@ public class TripRequest implements Comparable<TripRequest>{
     public int compareTo(TripRequest o) {
         return new Integer(this.getTripId()).compareTo(o.getTripId());
     }
-    
-   
-
-    /**
-     * @return the delay
-     */
-    public double getDelay() {
-        return delay;
-    }
 
-    /**
-     * @param delay the delay to set
-     */
-    public void setDelay(double delay) {
-        this.delay = delay;
-    }
 }
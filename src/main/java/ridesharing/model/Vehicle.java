@@ -5,6 +5,7 @@
  */
 package ridesharing.model;
 
+import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Set;
@@ -21,7 +22,7 @@ public class Vehicle {
     private Route route;
     int capacity;
 
-    public Vehicle(int vehicleId,AllPairsShortestPathMatrix matrix, int capacity){
+    public Vehicle(int vehicleId,TravelTimeProvider matrix, int capacity){
         this.vehicleId = vehicleId;
         this.route = new Route(capacity);
         this.servicing = new HashMap<>();
@@ -79,17 +80,26 @@ public class Vehicle {
         StringBuilder sb = new StringBuilder();
         sb.append("Objective: ").append(getRoute().getObjective()).append("\n");
         for (Point pt : this.getRoute().getSchedule()) {
-            sb.append(df.format(pt.getServiceTime())).append(" ")
+            sb.append(df.format(toLocalTime(pt.getServiceTime()))).append(" ")
                     .append((pt.isSource()?"Pickup ": "Dropoff "))
                     .append(servicing.get(pt.getTripId()).getRequester())
                     .append((pt.isSource()?" from ": " at "))
                     .append(pt.getTripId()).append("_").append(pt.isSource()?"S":"D")
-                    .append(pt.isSource()?"(Earliest pickup "+df.format(pt.getEarliest()):
-                            "(Latest arrival "+df.format(pt.getLatest())).append(")")
+                    .append(pt.isSource()?"(Earliest pickup "+df.format(toLocalTime(pt.getEarliest())):
+                            "(Latest arrival "+df.format(toLocalTime(pt.getLatest()))).append(")")
                     .append("\n");            
         }
         //System.out.println(sb.toString());
         return sb.toString();
     }
+
+    /**
+     * Convert a minute of day to a LocalTime for display (wraps past midnight)
+     * @param minuteOfDay int
+     * @return LocalTime
+     */
+    private static LocalTime toLocalTime(int minuteOfDay) {
+        return LocalTime.ofSecondOfDay(Math.floorMod(minuteOfDay, 24 * 60) * 60L);
+    }
     
 }
@@ -0,0 +1,150 @@
+package ridesharing.algorithm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import ridesharing.model.TripRequest;
+
+/**
+ * Checks that trip requests written to a binary trip file load back unchanged
+ * @author aengusmccullough
+ */
+public class BinaryTripFileTest {
+
+    @Test
+    public void roundTrip() throws IOException {
+        Random rnd = new Random(1);
+        List<TripRequest> tripRequests = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            //requesters repeat, so the string table is shared
+            tripRequests.add(InputParser.newTripRequest("Requester" + rnd.nextInt(300), i, rnd.nextInt(24 * 60), rnd.nextInt(24 * 60),
+                    rnd.nextInt(), rnd.nextInt(), rnd.nextInt(), rnd.nextInt()));
+        }
+        tripRequests.add(InputParser.newTripRequest("Ünïcödé requester", -1, 0, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, 0, -1));
+        tripRequests.add(InputParser.newTripRequest(new String(new char[70000]).replace('\0', 'x'), 5001, 1, 2, 3, 4, 5, 6));
+        tripRequests.add(InputParser.newTripRequest("", 5002, 1, 2, 3, 4, 5, 6));
+        File f = File.createTempFile("trips", ".rtb");
+        try {
+            BinaryTripFile.write(f, tripRequests);
+            assertTrue(BinaryTripFile.isBinary(f));
+            assertEquals(TripFileParserTest.describe(tripRequests), TripFileParserTest.describe(BinaryTripFile.load(f)));
+        } finally {
+            Files.delete(f.toPath());
+        }
+    }
+
+    @Test
+    public void emptyRoundTrip() throws IOException {
+        File f = File.createTempFile("trips", ".rtb");
+        try {
+            BinaryTripFile.write(f, new ArrayList<TripRequest>());
+            assertTrue(BinaryTripFile.load(f).isEmpty());
+        } finally {
+            Files.delete(f.toPath());
+        }
+    }
+
+    @Test
+    public void writeReplacesLongerFile() throws IOException {
+        List<TripRequest> tripRequests = new ArrayList<>();
+        tripRequests.add(InputParser.newTripRequest("Requester0", 0, 360, 480, 1, 2, 3, 4));
+        File f = File.createTempFile("trips", ".rtb");
+        try {
+            Files.write(f.toPath(), new byte[100000]);
+            BinaryTripFile.write(f, tripRequests);
+            assertEquals(TripFileParserTest.describe(tripRequests), TripFileParserTest.describe(BinaryTripFile.load(f)));
+            //nothing but the new file is left in the directory
+            File[] left = f.getAbsoluteFile().getParentFile().listFiles((File d, String name) -> name.startsWith("rtb-" + f.getName()));
+            assertEquals(0, left.length);
+        } finally {
+            Files.delete(f.toPath());
+        }
+    }
+
+    @Test
+    public void loadedAsInputFile() throws IOException {
+        String text = TripFileParserTest.file(20, "\n", "\n");
+        File txt = File.createTempFile("trips", ".txt");
+        File rtb = File.createTempFile("trips", ".rtb");
+        try {
+            Files.write(txt.toPath(), text.getBytes("UTF-8"));
+            BinaryTripFile.write(rtb, InputParser.parseInputFile(txt));
+            assertEquals(TripFileParserTest.reader(text), TripFileParserTest.describe(InputParser.parseInputFile(rtb)));
+        } finally {
+            Files.delete(txt.toPath());
+            Files.delete(rtb.toPath());
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        File f = File.createTempFile("trips", ".rtb");
+        try {
+            Files.write(f.toPath(), "1\nRequester0\t0\t6:00\t8:00\t1\t2\t3\t4\n".getBytes("UTF-8"));
+            assertFalse(BinaryTripFile.isBinary(f));
+            try {
+                BinaryTripFile.load(f);
+                fail("loaded a text file");
+            } catch (IOException ex) {
+                assertTrue(ex.getMessage().startsWith("Not a binary trip file"));
+            }
+        } finally {
+            Files.delete(f.toPath());
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedFile() throws IOException {
+        List<TripRequest> tripRequests = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            tripRequests.add(InputParser.newTripRequest("Requester" + i, i, 360, 480, 1, 2, 3, 4));
+        }
+        File f = File.createTempFile("trips", ".rtb");
+        try {
+            BinaryTripFile.write(f, tripRequests);
+            try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+                raf.setLength(raf.length() - 3);
+            }
+            try {
+                BinaryTripFile.load(f);
+                fail("loaded a truncated file");
+            } catch (IOException ex) {
+                assertTrue(ex.getMessage().startsWith("Corrupt binary trip file"));
+            }
+        } finally {
+            Files.delete(f.toPath());
+        }
+    }
+
+    @Test
+    public void rejectsBadStringCount() throws IOException {
+        List<TripRequest> tripRequests = new ArrayList<>();
+        tripRequests.add(InputParser.newTripRequest("Requester0", 0, 360, 480, 1, 2, 3, 4));
+        File f = File.createTempFile("trips", ".rtb");
+        try {
+            BinaryTripFile.write(f, tripRequests);
+            //a string count far larger than the file could hold, which must not be allocated
+            try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+                raf.seek(12);
+                raf.writeInt(Integer.MAX_VALUE);
+            }
+            try {
+                BinaryTripFile.load(f);
+                fail("loaded a file with a bad string count");
+            } catch (IOException ex) {
+                assertTrue(ex.getMessage().startsWith("Corrupt binary trip file"));
+            }
+        } finally {
+            Files.delete(f.toPath());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package ridesharing.algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import ridesharing.model.LazyTravelTimeProvider;
+import ridesharing.model.Node;
+import ridesharing.model.Point;
+import ridesharing.model.TravelTimeProvider;
+import ridesharing.model.TripRequest;
+import ridesharing.model.Vehicle;
+
+/**
+ * Checks that a failed re-optimization leaves the dispatcher able to dispatch and
+ * re-optimize as before
+ * @author aengusmccullough
+ */
+public class DispatcherTest {
+
+    private static final int CAPACITY = 3;
+
+    @Test
+    public void reoptimizesAfterFailedPass() {
+        FailingProvider failing = new FailingProvider();
+        Dispatcher dispatcher = new Dispatcher(failing, CAPACITY);
+        Dispatcher reference = new Dispatcher(new LazyTravelTimeProvider(), CAPACITY);
+        //each dispatcher gets its own requests, as dispatch updates their time windows
+        List<TripRequest> first = trips(new Random(1), 0, 80);
+        List<TripRequest> firstCopy = trips(new Random(1), 0, 80);
+        for (int i = 0; i < first.size(); i++) {
+            dispatcher.dispatch(first.get(i));
+            reference.dispatch(firstCopy.get(i));
+        }
+
+        failing.fail = true;
+        try {
+            dispatcher.reoptimize();
+            fail("re-optimized without travel times");
+        } catch (IllegalStateException expected) {
+        }
+        failing.fail = false;
+        assertEquals(describe(reference.getVehicles()), describe(dispatcher.getVehicles()));
+
+        //both go on as if the failed pass had not happened
+        List<TripRequest> second = trips(new Random(2), 80, 30);
+        List<TripRequest> secondCopy = trips(new Random(2), 80, 30);
+        for (int i = 0; i < second.size(); i++) {
+            assertEquals(reference.dispatch(secondCopy.get(i)), dispatcher.dispatch(second.get(i)));
+        }
+        String before = describe(dispatcher.getVehicles());
+        dispatcher.reoptimize();
+        reference.reoptimize();
+        assertNotEquals(before, describe(dispatcher.getVehicles()));
+        assertEquals(describe(reference.getVehicles()), describe(dispatcher.getVehicles()));
+    }
+
+    /**
+     * Travel times that can be made to fail, as a remote provider might
+     */
+    private static final class FailingProvider implements TravelTimeProvider {
+
+        private final TravelTimeProvider times = new LazyTravelTimeProvider();
+        private volatile boolean fail;
+
+        @Override
+        public double getTravelTime(Node a, Node b) {
+            if (fail) {
+                throw new IllegalStateException("no travel times");
+            }
+            return times.getTravelTime(a, b);
+        }
+    }
+
+    /**
+     * Trip requests in a 40km square, departing in order over the morning
+     */
+    private static List<TripRequest> trips(Random rnd, int firstId, int n) {
+        List<TripRequest> result = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int depart = 6 * 60 + (firstId + i) * 2;
+            int x1 = rnd.nextInt(200), y1 = rnd.nextInt(200), x2 = rnd.nextInt(200), y2 = rnd.nextInt(200);
+            int direct = (int) Math.ceil(Math.hypot(x2 - x1, y2 - y1) / 5);
+            result.add(InputParser.newTripRequest("Requester" + (firstId + i), firstId + i, depart, depart + direct + 10 + rnd.nextInt(30),
+                    x1, y1, x2, y2));
+        }
+        return result;
+    }
+
+    private static String describe(List<Vehicle> vehicles) {
+        StringBuilder sb = new StringBuilder();
+        for (Vehicle v : vehicles) {
+            sb.append(v.getVehicleId()).append(':');
+            for (Point pt : v.getRoute().getSchedule()) {
+                sb.append(' ').append(pt.getTripId()).append(pt.isSource() ? 's' : 'd');
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package ridesharing.algorithm;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Checks that Json reads valid documents and rejects the malformed ones a client could
+ * send the dispatch server with an IOException, never another exception
+ * @author aengusmccullough
+ */
+public class JsonTest {
+
+    @Test
+    public void values() throws IOException {
+        Map<?, ?> object = (Map<?, ?>) Json.parse(" {\"a\": [1, \"x\", true, false, null], \"b\": {}}\r\n");
+        assertEquals(Arrays.asList(1.0, "x", Boolean.TRUE, Boolean.FALSE, null), object.get("a"));
+        assertEquals(Collections.emptyMap(), object.get("b"));
+        assertNull(Json.parse("null"));
+    }
+
+    @Test
+    public void nestingDepth() throws IOException {
+        assertEquals(Collections.emptyList(), unwrap(Json.parse(nested(64)), 63));
+        assertRejected(nested(65), "Nesting deeper than 64");
+        //far too deep to read recursively, but rejected before the stack runs out
+        assertRejected(nested(1000000), "Nesting deeper than 64");
+        assertRejected(repeat("{\"a\":", 65) + "1" + repeat("}", 65), "Nesting deeper than 64");
+    }
+
+    @Test
+    public void escapes() throws IOException {
+        assertEquals("\"\\/\b\f\n\r\tA\u00e9", Json.parse("\"\\\"\\\\\\/\\b\\f\\n\\r\\t\\u0041\\u00E9\""));
+        assertRejected("\"\\x\"", "Bad escape");
+        assertRejected("\"\\'\"", "Bad escape");
+        assertRejected("\"\\u00g1\"", "Bad unicode escape");
+        assertRejected("\"\\u+041\"", "Bad unicode escape");
+        assertRejected("\"\\u-041\"", "Bad unicode escape");
+        assertRejected("\"\\u12\"", "Bad unicode escape");
+        assertRejected("\"\\u12", "Bad unicode escape");
+        assertRejected("\"abc\\", "Unterminated string");
+        assertRejected("\"abc", "Unterminated string");
+        assertRejected("\"a\nb\"", "Unescaped control character in string");
+    }
+
+    @Test
+    public void quoteRoundTrip() throws IOException {
+        String s = "Homer \"J\" \\ Simpson\n\r\t\u0001\u001f\u00e9/";
+        assertEquals(s, Json.parse(Json.quote(s)));
+    }
+
+    @Test
+    public void trailingGarbage() throws IOException {
+        assertRejected("{} {}", "Unexpected content after value");
+        assertRejected("[1]]", "Unexpected content after value");
+        assertRejected("1 2", "Unexpected content after value");
+        assertRejected("truex", "Unexpected content after value");
+        assertRejected("\"a\"\"b\"", "Unexpected content after value");
+        assertRejected("[1,]", "Unexpected character");
+        assertRejected("{\"a\":1,}", "Expected a string key");
+        assertRejected("[1 2]", "Expected ']'");
+        assertRejected("[1", "Expected ']'");
+        assertRejected("", "Unexpected end of input");
+        assertRejected("\u00a0[]", "Unexpected character");
+    }
+
+    @Test
+    public void numbers() throws IOException {
+        String[] valid = {"0", "-0", "7", "-12", "10.5", "0.25", "1e3", "1E+3", "25e-1", "-0.5e2", "1.7976931348623157e308"};
+        double[] expected = {0, -0.0, 7, -12, 10.5, 0.25, 1000, 1000, 2.5, -50, Double.MAX_VALUE};
+        for (int i = 0; i < valid.length; i++) {
+            assertEquals(valid[i], expected[i], (Double) Json.parse(valid[i]), 0);
+        }
+        for (String invalid : new String[]{"+1", ".5", "-", "-x", "NaN", "Infinity"}) {
+            assertRejected(invalid, "Unexpected character");
+        }
+        for (String invalid : new String[]{"1.", "1.e3", "1e", "1e+", "-1E-"}) {
+            assertRejected(invalid, "Expected a digit");
+        }
+        for (String invalid : new String[]{"01", "-01", "1e3e3", "1.2.3", "1d", "0x10"}) {
+            assertRejected(invalid, "Unexpected content after value");
+        }
+        assertRejected("1e309", "Number out of range");
+        assertRejected("[-1e400]", "Number out of range");
+    }
+
+    private static void assertRejected(String text, String message) {
+        try {
+            Json.parse(text);
+            fail("parsed " + text);
+        } catch (IOException ex) {
+            assertTrue(text + ": " + ex.getMessage(), ex.getMessage().startsWith(message + " at position "));
+        }
+    }
+
+    private static String nested(int depth) {
+        return repeat("[", depth) + repeat("]", depth);
+    }
+
+    private static String repeat(String s, int n) {
+        return new String(new char[n]).replace("\0", s);
+    }
+
+    private static Object unwrap(Object value, int depth) {
+        for (int i = 0; i < depth; i++) {
+            List<?> array = (List<?>) value;
+            assertEquals(1, array.size());
+            value = array.get(0);
+        }
+        return value;
+    }
+}
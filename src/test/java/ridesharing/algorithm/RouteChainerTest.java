@@ -0,0 +1,93 @@
+package ridesharing.algorithm;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import ridesharing.model.LazyTravelTimeProvider;
+import ridesharing.model.Point;
+import ridesharing.model.Route;
+import ridesharing.model.TravelTimeProvider;
+import ridesharing.model.TripRequest;
+import ridesharing.model.Vehicle;
+
+/**
+ * Checks that chained routes can still be traversed and serve every trip once
+ * @author aengusmccullough
+ */
+public class RouteChainerTest {
+
+    private static final int CAPACITY = 3;
+
+    private final TravelTimeProvider matrix = new LazyTravelTimeProvider();
+
+    @Test
+    public void chainsRouteThatCanBeReached() {
+        List<Vehicle> vehicles = new ArrayList<>();
+        vehicles.add(vehicle(0, trip(0, 8 * 60, 9 * 60, 0, 0, 10, 0)));
+        vehicles.add(vehicle(1, trip(1, 10 * 60, 11 * 60, 12, 0, 20, 0)));
+        RouteChainer.chain(vehicles, matrix);
+        assertEquals(1, vehicles.size());
+        assertEquals(4, vehicles.get(0).getRoute().getSchedule().size());
+        assertEquals(2, vehicles.get(0).getServicing().size());
+        assertTrue(Route.canTraverse(vehicles.get(0).getRoute().getSchedule(), matrix, CAPACITY));
+    }
+
+    @Test
+    public void keepsRouteThatCannotBeReached() {
+        List<Vehicle> vehicles = new ArrayList<>();
+        vehicles.add(vehicle(0, trip(0, 8 * 60, 9 * 60, 0, 0, 10, 0)));
+        //starts 5 minutes after the first ends, 50km away
+        vehicles.add(vehicle(1, trip(1, 9 * 60 + 5, 11 * 60, 60, 0, 70, 0)));
+        RouteChainer.chain(vehicles, matrix);
+        assertEquals(2, vehicles.size());
+    }
+
+    @Test
+    public void chainedRoutesAreFeasible() {
+        Random rnd = new Random(1);
+        for (int r = 0; r < 20; r++) {
+            List<Vehicle> vehicles = new ArrayList<>();
+            int nTrips = 50 + rnd.nextInt(150);
+            for (int t = 0; t < nTrips; t++) {
+                int depart = 6 * 60 + rnd.nextInt(12 * 60);
+                int x1 = rnd.nextInt(40), y1 = rnd.nextInt(40), x2 = rnd.nextInt(40), y2 = rnd.nextInt(40);
+                int direct = (int) Math.ceil(Math.hypot(x2 - x1, y2 - y1));
+                vehicles.add(vehicle(t, trip(t, depart, depart + direct + rnd.nextInt(30), x1, y1, x2, y2)));
+            }
+            RouteChainer.chain(vehicles, matrix);
+            assertTrue(vehicles.size() < nTrips);
+
+            Set<Integer> served = new HashSet<>();
+            for (Vehicle v : vehicles) {
+                List<Point> schedule = v.getRoute().getSchedule();
+                assertTrue(Route.canTraverse(schedule, matrix, CAPACITY));
+                for (Point pt : schedule) {
+                    assertTrue(v.getServicing().containsKey(pt.getTripId()));
+                    if (pt.isSource()) {
+                        assertTrue("trip " + pt.getTripId() + " served twice", served.add(pt.getTripId()));
+                    }
+                }
+                assertEquals(schedule.size(), 2 * v.getServicing().size());
+            }
+            assertEquals(nTrips, served.size());
+        }
+    }
+
+    private TripRequest trip(int tripId, int departAfter, int arriveBefore, int x1, int y1, int x2, int y2) {
+        TripRequest tr = InputParser.newTripRequest("Requester" + tripId, tripId, departAfter, arriveBefore, x1, y1, x2, y2);
+        tr.updateTimeWindows(matrix);
+        return tr;
+    }
+
+    private Vehicle vehicle(int vehicleId, TripRequest tr) {
+        Vehicle v = new Vehicle(vehicleId, matrix, CAPACITY);
+        v.getRoute().insert(0, 0, tr);
+        v.getServicing().put(tr.getTripId(), tr);
+        return v;
+    }
+}
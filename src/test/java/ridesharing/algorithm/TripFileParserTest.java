@@ -0,0 +1,219 @@
+package ridesharing.algorithm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+import ridesharing.model.TripRequest;
+
+/**
+ * Checks that TripFileParser accepts and rejects files as InputParser.parse does, with
+ * the same trip requests, messages and line numbers, whether it parses them whole or
+ * split into chunks
+ * @author aengusmccullough
+ */
+public class TripFileParserTest {
+
+    @Test
+    public void newlines() throws IOException {
+        assertParsedAsReader(file(3, "\n", "\n"));
+    }
+
+    @Test
+    public void carriageReturnNewlines() throws IOException {
+        assertParsedAsReader(file(3, "\r\n", "\r\n"));
+    }
+
+    @Test
+    public void loneCarriageReturns() throws IOException {
+        assertParsedAsReader(file(3, "\r", "\r"));
+        assertParsedAsReader(file(3, "\r", ""));
+    }
+
+    @Test
+    public void mixedLineBreaks() throws IOException {
+        assertParsedAsReader("4\r" + line(0) + "\n" + line(1) + "\r\n" + line(2) + "\r" + line(3) + "\n");
+    }
+
+    @Test
+    public void noFinalLineBreak() throws IOException {
+        assertParsedAsReader(file(3, "\n", ""));
+    }
+
+    @Test
+    public void fewerRecordsThanLines() throws IOException {
+        assertParsedAsReader("2\n" + line(0) + "\n" + line(1) + "\n" + line(2) + "\n");
+        assertParsedAsReader("0\n" + line(0) + "\n" + line(1) + "\n");
+    }
+
+    @Test
+    public void blankLines() throws IOException {
+        assertParsedAsReader("2\r\r" + line(0) + "\r");
+        assertParsedAsReader("2\r\n\r\n" + line(0) + "\r\n");
+        assertParsedAsReader("2\r" + line(0) + "\r\r\n" + line(1));
+    }
+
+    @Test
+    public void badHeader() throws IOException {
+        assertParsedAsReader("");
+        assertParsedAsReader("\n" + line(0) + "\n");
+        assertParsedAsReader("x\n" + line(0) + "\n");
+        assertParsedAsReader("1 \n" + line(0) + "\n");
+    }
+
+    @Test
+    public void leadingZeroHours() throws IOException {
+        assertParsedAsReader("3\n" + line(0, "009:00", "0024:00") + "\n" + line(1, "0000000000000000007:05", "12:00") + "\n"
+                + line(2, "06:00", "023:59") + "\n");
+    }
+
+    @Test
+    public void badTimes() throws IOException {
+        assertParsedAsReader("1\n" + line(0, "00000000000000000007:05", "12:00") + "\n");
+        assertParsedAsReader("1\n" + line(0, "7:05", "0025:00") + "\n");
+        assertParsedAsReader("1\n" + line(0, "24:01", "12:00") + "\n");
+        assertParsedAsReader("1\n" + line(0, "7:60", "12:00") + "\n");
+        assertParsedAsReader("1\n" + line(0, "7:5", "12:00") + "\n");
+        assertParsedAsReader("1\n" + line(0, "+7:05", "12:00") + "\n");
+        assertParsedAsReader("1\n" + line(0, "7:05", ":00") + "\n");
+    }
+
+    @Test
+    public void errorsOnLaterLines() throws IOException {
+        assertParsedAsReader("3\r" + line(0) + "\r" + line(1) + "\r" + line(2).replace("\t8:00\t", "\t8:0x\t") + "\r");
+        assertParsedAsReader("3\r\n" + line(0) + "\r\n" + line(1) + "\tx\r\n" + line(2) + "\r\n");
+        assertParsedAsReader("2\n" + line(0) + "\n" + line(1).replace("\t1\t", "\tone\t") + "\n");
+        assertParsedAsReader("1\n" + line(0).replace("\t3\t", "\t3.5\t") + "\n");
+        assertParsedAsReader("1\n" + line(0).replace("\t3\t", "\t99999999999\t") + "\n");
+    }
+
+    @Test
+    public void trailingTabs() throws IOException {
+        assertParsedAsReader("2\n" + line(0) + "\t\t\n" + line(1) + "\t\tx\n");
+    }
+
+    @Test
+    public void chunkBoundaries() throws IOException {
+        //every chunk size moves the boundaries, so they fall on every kind of position in a line
+        for (String lineBreak : new String[]{"\n", "\r", "\r\n"}) {
+            String text = file(40, lineBreak, lineBreak);
+            String expected = reader(text);
+            for (int minChunk = 1; minChunk <= 120; minChunk++) {
+                assertEquals("chunks of " + minChunk + " bytes", expected, parse(text, 4, minChunk));
+            }
+        }
+    }
+
+    @Test
+    public void chunkBoundariesWithMixedLineBreaks() throws IOException {
+        StringBuilder sb = new StringBuilder("40\r\n");
+        String[] lineBreaks = {"\n", "\r", "\r\n", "\r\n", "\r"};
+        for (int i = 0; i < 40; i++) {
+            sb.append(line(i)).append(lineBreaks[i % lineBreaks.length]);
+        }
+        String text = sb.toString();
+        String expected = reader(text);
+        for (int minChunk = 1; minChunk <= 120; minChunk++) {
+            assertEquals("chunks of " + minChunk + " bytes", expected, parse(text, 3, minChunk));
+        }
+    }
+
+    @Test
+    public void chunksStopAtRecordCount() throws IOException {
+        String text = "25\r\n" + file(40, "\r\n", "\r\n").substring(4) + "not\ta\trecord\r\n";
+        String expected = reader(text);
+        for (int minChunk = 1; minChunk <= 120; minChunk++) {
+            assertEquals("chunks of " + minChunk + " bytes", expected, parse(text, 4, minChunk));
+        }
+    }
+
+    @Test
+    public void chunkErrorsGiveFirstBadLine() throws IOException {
+        StringBuilder sb = new StringBuilder("40\r");
+        for (int i = 0; i < 40; i++) {
+            String line = line(i);
+            if (i == 17) {
+                line = line.replace("\t3\t", "\tx\t");
+            } else if (i == 33) {
+                line = line + "\textra";
+            }
+            sb.append(line).append('\r');
+        }
+        String text = sb.toString();
+        String expected = reader(text);
+        for (int minChunk = 1; minChunk <= 120; minChunk++) {
+            assertEquals("chunks of " + minChunk + " bytes", expected, parse(text, 4, minChunk));
+        }
+    }
+
+    /**
+     * Parse the text with TripFileParser and with InputParser.parse, asserting the trip
+     * requests, or the error messages, are the same
+     */
+    static void assertParsedAsReader(String text) throws IOException {
+        assertEquals(reader(text), parse(text, 1, Integer.MAX_VALUE));
+    }
+
+    /**
+     * @return String the trip requests InputParser.parse reads from the text, or its error message
+     */
+    static String reader(String text) {
+        try {
+            return describe(InputParser.parse(new BufferedReader(new StringReader(text))));
+        } catch (IOException ex) {
+            return ex.getMessage();
+        }
+    }
+
+    /**
+     * @return String the trip requests TripFileParser reads from a file of the text, or its error message
+     */
+    static String parse(String text, int nThreads, int minChunk) throws IOException {
+        File f = File.createTempFile("trips", ".txt");
+        try {
+            Files.write(f.toPath(), text.getBytes(StandardCharsets.UTF_8));
+            return describe(TripFileParser.parse(f, nThreads, minChunk));
+        } catch (IOException ex) {
+            return ex.getMessage();
+        } finally {
+            Files.delete(f.toPath());
+        }
+    }
+
+    static String describe(List<TripRequest> tripRequests) {
+        StringBuilder sb = new StringBuilder();
+        for (TripRequest tr : tripRequests) {
+            sb.append(tr.getRequester()).append(' ').append(tr.getTripId())
+                    .append(' ').append(tr.getSource().getEarliest()).append(' ').append(tr.getDestination().getLatest())
+                    .append(' ').append(tr.getSource().getxCoord()).append(' ').append(tr.getSource().getyCoord())
+                    .append(' ').append(tr.getDestination().getxCoord()).append(' ').append(tr.getDestination().getyCoord())
+                    .append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return String a file of n records, the header ending with the first line break and each record with the second
+     */
+    static String file(int n, String headerBreak, String lastBreak) {
+        StringBuilder sb = new StringBuilder().append(n).append(headerBreak);
+        for (int i = 0; i < n; i++) {
+            sb.append(line(i)).append(i < n - 1 ? headerBreak : lastBreak);
+        }
+        return sb.toString();
+    }
+
+    static String line(int tripId) {
+        return line(tripId, (6 + tripId % 12) + ":00", (8 + tripId % 12) + ":30");
+    }
+
+    static String line(int tripId, String departAfter, String arriveBefore) {
+        return "Requester" + tripId + "\t" + tripId + "\t" + departAfter + "\t" + arriveBefore + "\t"
+                + tripId % 50 + "\t3\t" + (tripId * 7) % 50 + "\t-4";
+    }
+}
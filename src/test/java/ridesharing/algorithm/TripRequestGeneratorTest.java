@@ -0,0 +1,39 @@
+package ridesharing.algorithm;
+
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import ridesharing.model.TripRequest;
+
+/**
+ * Checks that generated trip requests stay within the city and the day at the scale the
+ * generator is meant for
+ * @author aengusmccullough
+ */
+public class TripRequestGeneratorTest {
+
+    @Test
+    public void generatesHundredThousandCommuterTrips() {
+        TripRequestGenerator generator = new TripRequestGenerator();
+        generator.setTrips(100000);
+        generator.setHotspots(50, 40, 50);
+        generator.setCommuterShare(30);
+        generator.setSeed(1);
+        List<TripRequest> tripRequests = generator.generate();
+        assertEquals(100000, tripRequests.size());
+        for (int i = 0; i < tripRequests.size(); i++) {
+            TripRequest tr = tripRequests.get(i);
+            assertEquals(i + 1, tr.getTripId());
+            assertTrue(inCity(tr.getSource().getxCoord()) && inCity(tr.getSource().getyCoord()));
+            assertTrue(inCity(tr.getDestination().getxCoord()) && inCity(tr.getDestination().getyCoord()));
+            assertTrue(tr.getSource().getEarliest() >= 0);
+            assertTrue(tr.getSource().getEarliest() <= tr.getDestination().getLatest());
+            assertTrue(tr.getDestination().getLatest() < 24 * 60);
+        }
+    }
+
+    private static boolean inCity(int coord) {
+        return coord >= 0 && coord < 800;
+    }
+}
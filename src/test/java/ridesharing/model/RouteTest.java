@@ -0,0 +1,289 @@
+package ridesharing.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks the constant time insertion check and the objective deltas of Route against
+ * building each schedule and running canTraverse and calculateObjective on it, and the
+ * views and copies the search makes of routes against remove and insert
+ * @author aengusmccullough
+ */
+public class RouteTest {
+
+    private static final double ALPHA = 0.99;
+    private static final double EPS = 1e-9;
+    private static final int CAPACITY = 3;
+
+    private final TravelTimeProvider matrix = new LazyTravelTimeProvider();
+
+    @Test
+    public void canInsertMatchesCanTraverse() {
+        Random rnd = new Random(1);
+        int feasible = 0;
+        for (int r = 0; r < 200; r++) {
+            Route route = randomRoute(rnd, 1 + rnd.nextInt(6));
+            TripRequest tr = randomTrip(rnd, 1000);
+            int n = route.getSchedule().size();
+            for (int a = 0; a <= n; a++) {
+                for (int b = a; b <= n; b++) {
+                    boolean expected = Route.canTraverse(inserted(route, a, b, tr), matrix, CAPACITY);
+                    assertEquals("insert at " + a + ", " + b, expected, route.canInsert(a, b, tr, matrix, CAPACITY));
+                    if (expected) {
+                        feasible++;
+                    }
+                }
+            }
+        }
+        assertTrue(feasible > 0);
+    }
+
+    @Test
+    public void canInsertRejectsBadIndices() {
+        Random rnd = new Random(2);
+        Route route = randomRoute(rnd, 2);
+        TripRequest tr = randomTrip(rnd, 1000);
+        int n = route.getSchedule().size();
+        assertFalse(route.canInsert(-1, 0, tr, matrix, CAPACITY));
+        assertFalse(route.canInsert(1, 0, tr, matrix, CAPACITY));
+        assertFalse(route.canInsert(0, n + 1, tr, matrix, CAPACITY));
+    }
+
+    @Test
+    public void noInsertionPastServedBy() {
+        Random rnd = new Random(8);
+        int pruned = 0;
+        for (int r = 0; r < 200; r++) {
+            Route route = randomRoute(rnd, 1 + rnd.nextInt(6));
+            TripRequest tr = randomTrip(rnd, 1000);
+            int srcLimit = route.servedBy(tr.getSource().getLatest(), matrix);
+            int destLimit = route.servedBy(tr.getDestination().getLatest(), matrix);
+            int n = route.getSchedule().size();
+            for (int a = 0; a <= n; a++) {
+                for (int b = a; b <= n; b++) {
+                    if (a > srcLimit || b > destLimit) {
+                        assertFalse("insert at " + a + ", " + b, route.canInsert(a, b, tr, matrix, CAPACITY));
+                        pruned++;
+                    }
+                }
+            }
+        }
+        assertTrue(pruned > 0);
+    }
+
+    @Test
+    public void insertionDeltaMatchesCalculateObjective() {
+        Random rnd = new Random(3);
+        int checked = 0;
+        for (int r = 0; r < 200; r++) {
+            Route route = randomRoute(rnd, 1 + rnd.nextInt(6));
+            double before = route.calculateObjective(matrix, ALPHA);
+            TripRequest tr = randomTrip(rnd, 1000);
+            int n = route.getSchedule().size();
+            for (int a = 0; a <= n; a++) {
+                for (int b = a; b <= n; b++) {
+                    if (!route.canInsert(a, b, tr, matrix, CAPACITY)) {
+                        continue;
+                    }
+                    Route after = new Route(route);
+                    after.setSchedule(inserted(route, a, b, tr));
+                    double expected = after.calculateObjective(matrix, ALPHA) - before;
+                    assertEquals("insert at " + a + ", " + b, expected, route.insertionDelta(a, b, tr, matrix, ALPHA), EPS);
+                    checked++;
+                }
+            }
+        }
+        assertTrue(checked > 0);
+    }
+
+    @Test
+    public void removalDeltaMatchesCalculateObjective() {
+        Random rnd = new Random(4);
+        int checked = 0;
+        for (int r = 0; r < 200; r++) {
+            Route route = randomRoute(rnd, 2 + rnd.nextInt(6));
+            double before = route.calculateObjective(matrix, ALPHA);
+            List<Point> schedule = route.getSchedule();
+            for (int s = 0; s < schedule.size(); s++) {
+                if (!schedule.get(s).isSource()) {
+                    continue;
+                }
+                int d = s + 1;
+                while (schedule.get(d).getTripId() != schedule.get(s).getTripId()) {
+                    d++;
+                }
+                Route after = new Route(route);
+                after.remove(s, d - 1);
+                double expected = after.calculateObjective(matrix, ALPHA) - before;
+                assertEquals("remove at " + s + ", " + d, expected, route.removalDelta(s, d - 1, matrix, ALPHA), EPS);
+                checked++;
+            }
+        }
+        assertTrue(checked > 0);
+    }
+
+    @Test
+    public void evaluateObjectiveMatchesCalculateObjective() {
+        Random rnd = new Random(5);
+        for (int r = 0; r < 200; r++) {
+            Route route = randomRoute(rnd, 1 + rnd.nextInt(8));
+            assertEquals(route.calculateObjective(matrix, ALPHA), route.evaluateObjective(matrix, ALPHA), EPS);
+        }
+    }
+
+    @Test
+    public void withoutMatchesRemoveWithoutChangingRoute() {
+        Random rnd = new Random(6);
+        int checked = 0;
+        for (int r = 0; r < 200; r++) {
+            Route route = randomRoute(rnd, 2 + rnd.nextInt(6));
+            String before = describe(route.getSchedule());
+            List<Point> schedule = route.getSchedule();
+            for (int s = 0; s < schedule.size(); s++) {
+                if (!schedule.get(s).isSource()) {
+                    continue;
+                }
+                int d = s + 1;
+                while (schedule.get(d).getTripId() != schedule.get(s).getTripId()) {
+                    d++;
+                }
+                Route removed = new Route(route);
+                removed.remove(s, d - 1);
+                Route view = route.without(s, d - 1);
+                assertEquals(removed.getSchedule().size(), view.getSchedule().size());
+                for (int i = 0; i < view.getSchedule().size(); i++) {
+                    assertEquals(removed.getSchedule().get(i).getTripId(), view.getSchedule().get(i).getTripId());
+                    assertEquals(removed.getSchedule().get(i).isSource(), view.getSchedule().get(i).isSource());
+                }
+                assertEquals(removed.calculateObjective(matrix, ALPHA), view.evaluateObjective(matrix, ALPHA), EPS);
+                checked++;
+            }
+            assertEquals(before, describe(route.getSchedule()));
+        }
+        assertTrue(checked > 0);
+    }
+
+    @Test
+    public void copyWithInsertionMatchesInsert() {
+        Random rnd = new Random(7);
+        int checked = 0;
+        for (int r = 0; r < 200; r++) {
+            Route route = randomRoute(rnd, 2 + rnd.nextInt(6));
+            List<Point> schedule = route.getSchedule();
+            //insert into a view of the route without its first trip, as the search does
+            int d = 1;
+            while (schedule.get(d).getTripId() != schedule.get(0).getTripId()) {
+                d++;
+            }
+            Route view = route.without(0, d - 1);
+            String before = describe(schedule);
+            TripRequest tr = randomTrip(rnd, 1000);
+            int n = view.getSchedule().size();
+            for (int a = 0; a <= n; a++) {
+                for (int b = a; b <= n; b++) {
+                    if (!view.canInsert(a, b, tr, matrix, CAPACITY)) {
+                        continue;
+                    }
+                    Route expected = new Route(route);
+                    expected.remove(0, d - 1);
+                    assertTrue(expected.insert(a, b, tr));
+                    expected.calculateObjective(matrix, ALPHA);
+                    Route copy = view.copyWithInsertion(a, b, tr, matrix, ALPHA);
+                    assertEquals(describe(expected.getSchedule()), describe(copy.getSchedule()));
+                    assertEquals(expected.getObjective(), copy.getObjective(), EPS);
+                    checked++;
+                }
+            }
+            assertEquals(before, describe(schedule));
+        }
+        assertTrue(checked > 0);
+    }
+
+    /**
+     * A feasible route of up to nTrips trips, each inserted at a random feasible position
+     */
+    private Route randomRoute(Random rnd, int nTrips) {
+        Route route = new Route(CAPACITY);
+        route.insert(0, 0, randomTrip(rnd, 0));
+        for (int t = 1; t < nTrips; t++) {
+            TripRequest tr = randomTrip(rnd, t);
+            int n = route.getSchedule().size();
+            List<int[]> positions = new ArrayList<>();
+            for (int a = 0; a <= n; a++) {
+                for (int b = a; b <= n; b++) {
+                    if (Route.canTraverse(inserted(route, a, b, tr), matrix, CAPACITY)) {
+                        positions.add(new int[]{a, b});
+                    }
+                }
+            }
+            if (!positions.isEmpty()) {
+                int[] at = positions.get(rnd.nextInt(positions.size()));
+                route.setSchedule(inserted(route, at[0], at[1], tr));
+            }
+        }
+        route.calculateObjective(matrix, ALPHA);
+        return route;
+    }
+
+    /**
+     * Copy of the route's schedule with the trip's source before a and destination before b
+     */
+    private static List<Point> inserted(Route route, int a, int b, TripRequest tr) {
+        List<Point> schedule = new ArrayList<>();
+        for (Point pt : route.getSchedule()) {
+            schedule.add(new Point(pt));
+        }
+        schedule.add(a, new Point(tr.getSource()));
+        schedule.add(b + 1, new Point(tr.getDestination()));
+        //as a route is finished after it is rebuilt, the rest is set by calculateObjective
+        Point first = schedule.get(0);
+        first.setServiceTime(first.getEarliest());
+        first.setLoad(1);
+        return schedule;
+    }
+
+    /**
+     * Trip, end, service time and load of each point
+     */
+    private static String describe(List<Point> schedule) {
+        StringBuilder sb = new StringBuilder();
+        for (Point pt : schedule) {
+            sb.append(pt.getTripId()).append(pt.isSource() ? 's' : 'd').append(' ')
+                    .append(pt.getServiceTime()).append(' ').append(pt.getLoad()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A trip in a 30km square departing within two hours, with up to 40 minutes to spare
+     */
+    private TripRequest randomTrip(Random rnd, int tripId) {
+        Node source = new Node();
+        source.setSource(true);
+        source.setTripId(tripId);
+        source.setxCoord(rnd.nextInt(30));
+        source.setyCoord(rnd.nextInt(30));
+        source.setEarliest(8 * 60 + rnd.nextInt(120));
+        Node dest = new Node();
+        dest.setSource(false);
+        dest.setTripId(tripId);
+        dest.setxCoord(rnd.nextInt(30));
+        dest.setyCoord(rnd.nextInt(30));
+        if (dest.getxCoord() == source.getxCoord() && dest.getyCoord() == source.getyCoord()) {
+            dest.setxCoord(dest.getxCoord() + 1);
+        }
+        dest.setLatest(source.getEarliest() + (int) Math.ceil(source.distanceTo(dest)) + rnd.nextInt(40));
+        TripRequest tr = new TripRequest();
+        tr.setRequester("Requester" + tripId);
+        tr.setTripId(tripId);
+        tr.setSource(source);
+        tr.setDestination(dest);
+        tr.updateTimeWindows(matrix);
+        return tr;
+    }
+}